@@ -0,0 +1,68 @@
+package com.viae.common.pdf.benchmark;
+
+import java.io.OutputStream;
+
+/**
+ * Content shared by the benchmarks.
+ *
+ * @author Vandeperre Maarten
+ */
+public final class BenchmarkTexts {
+    public static final String LOREM_IPSUM = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et dolore magna aliqua. "
+            + "Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip ex ea commodo consequat. "
+            + "Duis aute irure dolor in reprehenderit in voluptate velit esse cillum dolore eu fugiat nulla pariatur.";
+
+    private BenchmarkTexts() {
+    }
+
+    /**
+     * @param count, the number of paragraphs.
+     * @return the lorem ipsum paragraph repeated the given number of times, separated by a space.
+     */
+    public static String paragraphs(final int count) {
+        final StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < count; i++){
+            if(i > 0){
+                builder.append(' ');
+            }
+            builder.append(LOREM_IPSUM);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param paragraphCount, the number of text lines of the template.
+     * @return a string template with a header, a table and the given number of lorem ipsum text lines.
+     */
+    public static String template(final int paragraphCount) {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("conf|font_family|HELVETICA_BOLD|EOL|\n");
+        builder.append("conf|font_size|15|EOL|\n");
+        builder.append("text|Benchmark document|EOL|\n");
+        builder.append("conf|font_family|COURIER|EOL|\n");
+        builder.append("conf|font_size|8|EOL|\n");
+        builder.append("table_row|name|maarten vandeperre|EOL|\n");
+        builder.append("table_row|company|VIAE|EOL|\n");
+        builder.append("conf|font_family|HELVETICA|EOL|\n");
+        builder.append("conf|font_size|10|EOL|\n");
+        for(int i = 0; i < paragraphCount; i++){
+            builder.append("text|").append(LOREM_IPSUM).append("|EOL|\n");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Output stream dropping everything written to it, the rendered pdfs are only counted.
+     */
+    public static final class DiscardingOutputStream extends OutputStream {
+        @Override
+        public void write(final int b) {
+            //discard
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            //discard
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.viae.common.pdf.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.viae.common.pdf.model.FontFamily;
+import com.viae.common.pdf.util.TextWrapUtil;
+
+/**
+ * Wrapping of short, long and spaceless text to the width of an A4 page.
+ *
+ * @author Vandeperre Maarten
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextWrapBenchmark {
+    private static final float FONT_SIZE = 10;
+    private static final float MAX_LINE_WIDTH = 495;
+
+    @Param({"SHORT", "LONG", "SPACELESS"})
+    public TextShape shape;
+
+    private String text;
+
+    @Setup
+    public void setUp() {
+        text = shape.create();
+    }
+
+    @Benchmark
+    public List<String> wrapText() {
+        return TextWrapUtil.wrapText(text, FontFamily.HELVETICA, FONT_SIZE, MAX_LINE_WIDTH).getWrapResult();
+    }
+
+    @Benchmark
+    public int[] getLineEnds() {
+        return TextWrapUtil.getLineEnds(text, FontFamily.HELVETICA, FONT_SIZE, MAX_LINE_WIDTH);
+    }
+
+    public static enum TextShape {
+        SHORT {
+            @Override
+            String create() {
+                return "Invoice number 2016-0042";
+            }
+        },
+        LONG {
+            @Override
+            String create() {
+                return BenchmarkTexts.paragraphs(20);
+            }
+        },
+        SPACELESS {
+            @Override
+            String create() {
+                final StringBuilder builder = new StringBuilder();
+                for(int i = 0; i < 5000; i++){
+                    builder.append((char) ('a' + i % 26));
+                }
+                return builder.toString();
+            }
+        };
+
+        abstract String create();
+    }
+}
@@ -0,0 +1,86 @@
+package com.viae.common.pdf.service.impl;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.viae.common.pdf.benchmark.BenchmarkTexts;
+import com.viae.common.pdf.service.impl.PdfBuilder.PageSize;
+
+/**
+ * End to end rendering of a string template, from the template string to the saved pdf.
+ * 10 paragraphs render a single page, 24000 paragraphs render about 1000 pages.
+ * The layout benchmarks paint an already laid out document, one page after the other, concurrently on a pool with a thread per processor or streaming.
+ *
+ * @author Vandeperre Maarten
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DocumentBenchmark {
+
+    @Param({"10", "24000"})
+    public int paragraphs;
+
+    private String template;
+    private CompiledTemplate compiledTemplate;
+    private DocumentLayout layout;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        template = BenchmarkTexts.template(paragraphs);
+        compiledTemplate = CompiledTemplate.compile(template);
+        layout = new StringPdfBuilder().layout(compiledTemplate, PageSize.A4);
+        pool = new ForkJoinPool();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public long buildPdf() {
+        return new StringPdfBuilder().buildPdf(template, PageSize.A4, new BenchmarkTexts.DiscardingOutputStream());
+    }
+
+    @Benchmark
+    public long buildCompiledPdf() {
+        return new StringPdfBuilder().buildPdf(compiledTemplate, PageSize.A4, PdfOutput.toStream(new BenchmarkTexts.DiscardingOutputStream()));
+    }
+
+    @Benchmark
+    public long paintLayout() {
+        return new PdfBuilder().buildPdf(layout, PdfOutput.toStream(new BenchmarkTexts.DiscardingOutputStream()));
+    }
+
+    @Benchmark
+    public long paintLayoutParallel() {
+        final PdfBuilder builder = new PdfBuilder();
+        builder.setPaintPool(pool);
+        return builder.buildPdf(layout, PdfOutput.toStream(new BenchmarkTexts.DiscardingOutputStream()));
+    }
+
+    @Benchmark
+    public long paintLayoutStreaming() {
+        final PdfBuilder builder = new PdfBuilder();
+        builder.setStreaming(true);
+        return builder.buildPdf(layout, PdfOutput.toStream(new BenchmarkTexts.DiscardingOutputStream()));
+    }
+}
@@ -0,0 +1,93 @@
+package com.viae.common.pdf.service.impl;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.viae.common.pdf.benchmark.BenchmarkTexts;
+import com.viae.common.pdf.service.impl.PdfBuilder.ImageType;
+import com.viae.common.pdf.service.impl.PdfBuilder.PageSize;
+
+/**
+ * Embedding a generated image in a document, with and without a shared {@link ImageCache}.
+ *
+ * @author Vandeperre Maarten
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageBenchmark {
+    private static final int IMAGE_WIDTH = 1600;
+    private static final int IMAGE_HEIGHT = 1200;
+    private static final long IMAGE_CACHE_SIZE = 64L * 1024 * 1024;
+
+    @Param({"JPEG", "OTHER"})
+    public ImageType type;
+
+    private File image;
+    private ImageCache imageCache;
+    private JavaPdfBuilder.BuilderClient client;
+
+    @Setup
+    public void setUp() throws IOException {
+        final BufferedImage bufferedImage = new BufferedImage(IMAGE_WIDTH, IMAGE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D graphics = bufferedImage.createGraphics();
+        try{
+            for(int i = 0; i < IMAGE_WIDTH; i += 40){
+                graphics.setColor(new Color(i % 256, (i * 7) % 256, (i * 13) % 256));
+                graphics.fillRect(i, 0, 40, IMAGE_HEIGHT);
+            }
+        } finally {
+            graphics.dispose();
+        }
+        final String format = type == ImageType.JPEG ? "jpg" : "png";
+        image = File.createTempFile("benchmark", "." + format);
+        ImageIO.write(bufferedImage, format, image);
+
+        imageCache = new ImageCache(IMAGE_CACHE_SIZE);
+        client = new JavaPdfBuilder.BuilderClient() {
+            @Override
+            public void whenBuilding(final JavaPdfBuilder builder) {
+                builder.writeImage(image, type);
+            }
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        image.delete();
+    }
+
+    @Benchmark
+    public long embedImage() {
+        return new JavaPdfBuilder().buildPdf(client, PageSize.A4, new BenchmarkTexts.DiscardingOutputStream());
+    }
+
+    @Benchmark
+    public long embedCachedImage() {
+        final JavaPdfBuilder builder = new JavaPdfBuilder();
+        builder.setImageCache(imageCache);
+        return builder.buildPdf(client, PageSize.A4, new BenchmarkTexts.DiscardingOutputStream());
+    }
+}
@@ -0,0 +1,74 @@
+package com.viae.common.pdf.service.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.viae.common.pdf.model.FontFamily;
+import com.viae.common.pdf.model.PdfContext;
+import com.viae.common.pdf.service.impl.PdfBuilder.PageSize;
+
+/**
+ * Laying out a document of 10000 short single line texts, the per line overhead of the layout dominates.
+ * The alternating variant switches between two font sizes for every line, so the line metrics are computed for every line.
+ *
+ * @author Vandeperre Maarten
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineLayoutBenchmark {
+    private static final int LINES = 10000;
+
+    private String[] lines;
+    private PdfContext context;
+    private PdfContext otherContext;
+
+    @Setup
+    public void setUp() {
+        lines = new String[LINES];
+        for(int i = 0; i < LINES; i++){
+            lines[i] = "line " + i;
+        }
+        context = PdfContext.builder().create().fontFamily(FontFamily.HELVETICA).fontSize(10).build();
+        otherContext = PdfContext.builder().create().fontFamily(FontFamily.HELVETICA).fontSize(11).build();
+    }
+
+    @Benchmark
+    public DocumentLayout layoutLines() {
+        return new JavaPdfBuilder().layout(new JavaPdfBuilder.BuilderClient() {
+            @Override
+            public void whenBuilding(final JavaPdfBuilder builder) {
+                builder.setContext(context);
+                for(final String line : lines){
+                    builder.writeText(line);
+                }
+            }
+        }, PageSize.A4);
+    }
+
+    @Benchmark
+    public DocumentLayout layoutLinesAlternatingFontSize() {
+        return new JavaPdfBuilder().layout(new JavaPdfBuilder.BuilderClient() {
+            @Override
+            public void whenBuilding(final JavaPdfBuilder builder) {
+                for(int i = 0; i < lines.length; i++){
+                    builder.setContext(i % 2 == 0 ? context : otherContext);
+                    builder.writeText(lines[i]);
+                }
+            }
+        }, PageSize.A4);
+    }
+}
@@ -0,0 +1,115 @@
+package com.viae.common.pdf.service.impl;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.viae.common.pdf.model.FontFamily;
+import com.viae.common.pdf.model.PdfContext;
+
+/**
+ * Laying out and painting tables with many columns, row by row and as one multi-row table (without saving the document).
+ * The cached variant shares a wrap cache between the invocations, so all cells are served from the cache.
+ *
+ * @author Vandeperre Maarten
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TableBenchmark {
+    private static final int ROWS = 50;
+
+    @Param({"5", "20", "50"})
+    public int columns;
+
+    private String[][] rows;
+    private PdfContext context;
+    private WrapCache wrapCache;
+
+    @Setup
+    public void setUp() {
+        rows = new String[ROWS][columns];
+        for(int i = 0; i < ROWS; i++){
+            for(int j = 0; j < columns; j++){
+                rows[i][j] = "cell " + i + "." + j + " with some wrapping content";
+            }
+        }
+        context = PdfContext.builder()
+                .create()
+                .fontFamily(FontFamily.COURIER)
+                .fontSize(5)
+                .marginLeft(20)
+                .marginRight(20)
+                .borderWidth(1)
+                .cellMarginLeft(2)
+                .cellMarginRight(2)
+                .cellMarginTop(2)
+                .cellMarginBottom(2)
+                .build();
+        wrapCache = new WrapCache(ROWS * columns);
+    }
+
+    @Benchmark
+    public int writeTableRows() throws IOException {
+        final TableBuilder builder = new TableBuilder(context);
+        try(final PDDocument document = new PDDocument()){
+            return builder.write(document, rows, false);
+        }
+    }
+
+    @Benchmark
+    public int writeTable() throws IOException {
+        final TableBuilder builder = new TableBuilder(context);
+        try(final PDDocument document = new PDDocument()){
+            return builder.write(document, rows, true);
+        }
+    }
+
+    @Benchmark
+    public int writeTableWithWrapCache() throws IOException {
+        final TableBuilder builder = new TableBuilder(context);
+        builder.setWrapCache(wrapCache);
+        try(final PDDocument document = new PDDocument()){
+            return builder.write(document, rows, true);
+        }
+    }
+
+    private static final class TableBuilder extends PdfBuilder {
+        private TableBuilder(final PdfContext context) {
+            this.context = context;
+        }
+
+        private int write(final PDDocument document, final String[][] rows, final boolean multiRow) throws IOException {
+            final PDPage page = new PDPage(getPageSize(PageSize.A4));
+            startLayout(page.findMediaBox());
+            if(multiRow){
+                writeTable(page, rows);
+            } else {
+                for(final String[] row : rows){
+                    writeTable(page, new String[][]{row});
+                }
+            }
+            final PagePainter painter = new PagePainter(document);
+            for(final PageLayout pageLayout : finishLayout().getPages()){
+                painter.paint(pageLayout);
+            }
+            return document.getNumberOfPages();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.viae.common.pdf.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.fontbox.ttf.CMAPEncodingEntry;
+import org.apache.fontbox.ttf.CMAPTable;
+import org.apache.fontbox.ttf.HeaderTable;
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TTFSubFont;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.encoding.Encoding;
+import org.apache.pdfbox.encoding.WinAnsiEncoding;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDTrueTypeFont;
+
+import com.viae.common.utils.validate.Validate;
+
+/**
+ * A TrueType font (.ttf, or .otf with TrueType outlines) that is embedded in the pdf.
+ * The font program is parsed once per font file for the whole process and shared by all documents and threads,
+ * every document only embeds a subset with the glyphs of the characters it uses.
+ * Register a font with {@link #register(String, File)} to use it by name in a template (e.g. 'conf|font_family|Corporate|EOL|').
+ *
+ * @author Vandeperre Maarten
+ */
+public final class EmbeddedFont implements TextFont {
+    private static final int SINGLE_BYTE_CODES = 256;
+    private static final float GLYPH_SPACE_UNITS = 1000f;
+    private static final float ERROR_MARGIN_Y = 0.375f;
+    private static final int SUBSET_TAG_LENGTH = 6;
+
+    private static final ConcurrentMap<String, EmbeddedFont> LOADED_FONTS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, EmbeddedFont> REGISTERED_FONTS = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final TrueTypeFont program;
+    private final GlyphWidthTable glyphWidthTable;
+    private final float boundingBoxHeight;
+
+    private EmbeddedFont(final String name, final TrueTypeFont program) {
+        this.name = name;
+        this.program = program;
+        final float scale = GLYPH_SPACE_UNITS / program.getUnitsPerEm();
+        final CMAPEncodingEntry cmap = getUnicodeCmap(program);
+        final WinAnsiEncoding encoding = new WinAnsiEncoding();
+        final float[] widths = new float[SINGLE_BYTE_CODES];
+        for(int i = 0; i < SINGLE_BYTE_CODES; i++){
+            widths[i] = program.getAdvanceWidth(cmap.getGlyphId(getUnicode(encoding, i))) * scale;
+        }
+        this.glyphWidthTable = GlyphWidthTable.of(widths, program.getAdvanceWidth(0) * scale);
+        final HeaderTable header = program.getHeader();
+        this.boundingBoxHeight = (header.getYMax() - header.getYMin()) * scale;
+    }
+
+    /**
+     * Load a font file, every file is only parsed once: loading the same file again returns the same font.
+     *
+     * @param file, the TrueType font file.
+     * @return the font.
+     * @throws IllegalArgumentException when the file isn't a TrueType font.
+     */
+    public static EmbeddedFont load(final File file) {
+        Validate.notNull(file, "font file should be provided");
+        Validate.isTrue(file.isFile(), String.format("font file %s should exist", file));
+        try{
+            final String path = file.getCanonicalPath();
+            EmbeddedFont font = LOADED_FONTS.get(path);
+            if(font == null){
+                synchronized(LOADED_FONTS){
+                    font = LOADED_FONTS.get(path);
+                    if(font == null){
+                        font = parse(file);
+                        LOADED_FONTS.put(path, font);
+                    }
+                }
+            }
+            return font;
+        } catch(final IOException e){
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Load a font file and register it under the given name, for the whole process.
+     *
+     * @param name, the name to use the font with, e.g. in the 'font_family' configuration of a template.
+     * @param file, the TrueType font file.
+     * @return the font.
+     */
+    public static EmbeddedFont register(final String name, final File file) {
+        Validate.notBlank(name, "font name should be provided");
+        final EmbeddedFont font = load(file);
+        REGISTERED_FONTS.put(name, font);
+        return font;
+    }
+
+    /**
+     * @param name, the name the font is registered with.
+     * @return the registered font, null when no font is registered with the given name.
+     */
+    public static EmbeddedFont forName(final String name) {
+        return name == null ? null : REGISTERED_FONTS.get(name);
+    }
+
+    private static EmbeddedFont parse(final File file) throws IOException {
+        final TrueTypeFont program = new TTFParser().parseTTF(new ByteArrayInputStream(Files.readAllBytes(file.toPath())));
+        Validate.isTrue(program.getGlyph() != null && program.getCMAP() != null, String.format("%s should be a font with TrueType outlines", file));
+        final String postScriptName = program.getNaming() != null ? program.getNaming().getPSName() : null;
+        return new EmbeddedFont(postScriptName != null ? postScriptName : file.getName().replaceFirst("\\.[^.]*$", ""), program);
+    }
+
+    /**
+     * The subset is embedded with the WinAnsi encoding, so a character code is mapped to its glyph name and from there to the unicode character of the cmap.
+     *
+     * @return the unicode character of the given code, 0 (the missing glyph) when the encoding has no glyph for the code.
+     */
+    private static int getUnicode(final WinAnsiEncoding encoding, final int code) {
+        try{
+            if(!encoding.hasNameForCode(code)){
+                return 0;
+            }
+            final String character = Encoding.getCharacterForName(encoding.getName(code));
+            return character == null || character.length() != 1 ? 0 : character.charAt(0);
+        } catch(final IOException e){
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static CMAPEncodingEntry getUnicodeCmap(final TrueTypeFont program) {
+        for(final CMAPEncodingEntry cmap : program.getCMAP().getCmaps()){
+            if(cmap.getPlatformId() == CMAPTable.PLATFORM_WINDOWS && cmap.getPlatformEncodingId() == CMAPTable.ENCODING_UNICODE){
+                return cmap;
+            }
+        }
+        throw new IllegalArgumentException("font should have a unicode character map");
+    }
+
+    /**
+     * Embed a subset of the font with only the glyphs of the given characters.
+     *
+     * @param document, the document to embed the font in.
+     * @param characters, the characters used in the document.
+     * @return the embedded font, to use in the given document only.
+     * @throws IOException when the font can't be embedded.
+     */
+    public PDFont embedSubset(final PDDocument document, final BitSet characters) throws IOException {
+        final ByteArrayOutputStream subset = new ByteArrayOutputStream();
+        //the parsed program is shared, subsets are written one at a time
+        synchronized(program){
+            final TTFSubFont subFont = new TTFSubFont(program, "");
+            for(int character = characters.nextSetBit(0); character >= 0; character = characters.nextSetBit(character + 1)){
+                subFont.addCharCode(character);
+            }
+            subFont.writeToStream(subset);
+        }
+        final PDStream fontFile = new PDStream(document, new ByteArrayInputStream(subset.toByteArray()), false);
+        fontFile.getStream().setInt(COSName.LENGTH1, subset.size());
+        fontFile.addCompression();
+        final PDTrueTypeFont font = PDTrueTypeFont.loadTTF(fontFile, new WinAnsiEncoding());
+        final String subsetName = getSubsetTag(characters) + "+" + name;
+        font.setBaseFont(subsetName);
+        font.getFontDescriptor().setFontName(subsetName);
+        return font;
+    }
+
+    /**
+     * The tag of a subset is 6 upper case letters, derived from the characters of the subset.
+     */
+    private static String getSubsetTag(final BitSet characters) {
+        final char[] tag = new char[SUBSET_TAG_LENGTH];
+        int hash = characters.hashCode();
+        for(int i = 0; i < SUBSET_TAG_LENGTH; i++){
+            tag[i] = (char) ('A' + Math.abs(hash % 26));
+            hash /= 26;
+        }
+        return new String(tag);
+    }
+
+    /**
+     * @return the PostScript name of the font.
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public GlyphWidthTable getGlyphWidthTable() {
+        return glyphWidthTable;
+    }
+
+    @Override
+    public float getBoundingBoxHeight() {
+        return boundingBoxHeight;
+    }
+
+    @Override
+    public float getErrorMarginY() {
+        return ERROR_MARGIN_Y;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
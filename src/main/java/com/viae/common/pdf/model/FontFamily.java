@@ -3,7 +3,12 @@ package com.viae.common.pdf.model;
 import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
 
-public enum FontFamily {
+/**
+ * The standard (base 14) fonts, they are never embedded in the pdf.
+ *
+ * @author Vandeperre Maarten
+ */
+public enum FontFamily implements TextFont {
     COURIER(PDType1Font.COURIER, 0.8f, 0.375f),
     HELVETICA_BOLD(PDType1Font.HELVETICA_BOLD, 0.4f, 0.375f),
     HELVETICA(PDType1Font.HELVETICA, 0.375f, 0.375f);
@@ -11,6 +16,7 @@ public enum FontFamily {
     private final PDFont fontFamily;
     private final float errorMarginX;
     private final float errorMarginY;
+    private volatile GlyphWidthTable glyphWidthTable;
     private FontFamily(final PDFont fontFamily, final float errorMarginX, final float errorMarginY){
         this.fontFamily = fontFamily;
         this.errorMarginX = errorMarginX;
@@ -20,11 +26,34 @@ public enum FontFamily {
         return fontFamily;
     }
 
+    /**
+     * @deprecated text widths are measured with {@link #getGlyphWidthTable()}.
+     */
+    @Deprecated
     public float getErrorMarginX() {
         return errorMarginX;
     }
 
+    @Override
     public float getErrorMarginY() {
         return errorMarginY;
     }
+
+    @Override
+    public float getBoundingBoxHeight() {
+        return fontFamily.getFontDescriptor().getFontBoundingBox().getHeight();
+    }
+
+    /**
+     * @return the glyph widths of this font family, read from the font metrics on first use.
+     */
+    @Override
+    public GlyphWidthTable getGlyphWidthTable() {
+        GlyphWidthTable table = glyphWidthTable;
+        if(table == null){
+            table = GlyphWidthTable.of(fontFamily);
+            glyphWidthTable = table;
+        }
+        return table;
+    }
 }
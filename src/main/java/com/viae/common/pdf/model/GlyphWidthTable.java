@@ -0,0 +1,86 @@
+package com.viae.common.pdf.model;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+/**
+ * Advance widths of the glyphs of a font, read once from the font metrics (AFM or the metrics of an embedded font program).
+ * Widths are expressed in glyph space units (1/1000 of the font size),
+ * use {@link #getScale(float)} to convert them to page units.
+ *
+ * @author Vandeperre Maarten
+ */
+public final class GlyphWidthTable {
+    private static final int TABLE_SIZE = 256;
+    private static final float GLYPH_SPACE_UNITS = 1000f;
+
+    private final float[] widths;
+    private final float defaultWidth;
+
+    private GlyphWidthTable(final float[] widths, final float defaultWidth) {
+        this.widths = widths;
+        this.defaultWidth = defaultWidth;
+    }
+
+    /**
+     * Read the widths of all single byte character codes of the given font.
+     *
+     * @param font, the font to read the metrics from.
+     * @return the width table of the font.
+     */
+    public static GlyphWidthTable of(final PDFont font) {
+        try {
+            final float[] widths = new float[TABLE_SIZE];
+            final byte[] code = new byte[1];
+            for(int i = 0; i < TABLE_SIZE; i++){
+                code[0] = (byte) i;
+                widths[i] = font.getFontWidth(code, 0, 1);
+            }
+            return new GlyphWidthTable(widths, font.getAverageFontWidth());
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param widths, the widths of the single byte character codes, in glyph space units.
+     * @param defaultWidth, the width of the characters outside the single byte range.
+     * @return the width table.
+     */
+    static GlyphWidthTable of(final float[] widths, final float defaultWidth) {
+        return new GlyphWidthTable(Arrays.copyOf(widths, TABLE_SIZE), defaultWidth);
+    }
+
+    /**
+     * @param fontSize, the used font size.
+     * @return the factor to convert glyph space widths to page units for the given font size.
+     */
+    public static float getScale(final float fontSize) {
+        return fontSize / GLYPH_SPACE_UNITS;
+    }
+
+    /**
+     * @param character, the character to measure.
+     * @return the advance width of the character, in glyph space units.
+     *  Characters outside the single byte range are measured with the average width of the font.
+     */
+    public float getWidth(final char character) {
+        return character < TABLE_SIZE ? widths[character] : defaultWidth;
+    }
+
+    /**
+     * @param text, the text to measure.
+     * @param start, the index of the first character to measure (inclusive).
+     * @param end, the index of the last character to measure (exclusive).
+     * @return the advance width of the given range of the text, in glyph space units.
+     */
+    public float getWidth(final CharSequence text, final int start, final int end) {
+        float width = 0;
+        for(int i = start; i < end; i++){
+            width += getWidth(text.charAt(i));
+        }
+        return width;
+    }
+}
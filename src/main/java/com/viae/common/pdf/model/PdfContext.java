@@ -15,7 +15,7 @@ import com.viae.common.pojo.PojoBuilder;
  */
 //TODO add comments on the fields + split in sub objects (table settings, text settings, ...)
 public class PdfContext {
-    private FontFamily fontFamily;
+    private TextFont fontFamily;
     private float fontSize;
     private float marginLeft;
     private float marginRight;
@@ -51,11 +51,11 @@ public class PdfContext {
         }
     }
 
-    public FontFamily getFontFamily() {
+    public TextFont getFontFamily() {
         return fontFamily;
     }
 
-    private void setFontFamily(final FontFamily fontFamily) {
+    private void setFontFamily(final TextFont fontFamily) {
         this.fontFamily = fontFamily;
     }
 
@@ -155,6 +155,10 @@ public class PdfContext {
         this.marginBottom = marginBottom;
     }
 
+    /**
+     * @return a cleaned builder which is confined to the calling thread,
+     *  so contexts can be built concurrently from different threads without locking.
+     */
     public static final Builder builder(){
         return Builder.getInstance().clean();
     }
@@ -175,7 +179,9 @@ public class PdfContext {
     }
 
     /**
-     * Builder class to create {@link PdfContext} objects
+     * Builder class to create {@link PdfContext} objects.
+     * Each thread gets its own builder instance: don't share a builder between threads
+     * and don't request a new builder while building a context on the same thread.
      */
     public final static class Builder extends PojoBuilder<PdfContext>{
         private PdfContext context;
@@ -183,7 +189,7 @@ public class PdfContext {
         private Builder() {
         }
 
-        public Builder fontFamily(final FontFamily fontFamily){
+        public Builder fontFamily(final TextFont fontFamily){
             context.setFontFamily(fontFamily);
             return this;
         }
@@ -272,11 +278,16 @@ public class PdfContext {
         }
 
         static final class LazyInit {
-            public static final Builder INSTANCE = new Builder();
+            public static final ThreadLocal<Builder> INSTANCE = new ThreadLocal<Builder>(){
+                @Override
+                protected Builder initialValue() {
+                    return new Builder();
+                }
+            };
         }
 
-        private static synchronized Builder getInstance() {
-            return LazyInit.INSTANCE;
+        private static Builder getInstance() {
+            return LazyInit.INSTANCE.get();
         }
     }
 }
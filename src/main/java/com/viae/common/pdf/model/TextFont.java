@@ -0,0 +1,24 @@
+package com.viae.common.pdf.model;
+
+/**
+ * A font text can be laid out with: one of the standard {@link FontFamily}s or a registered {@link EmbeddedFont}.
+ *
+ * @author Vandeperre Maarten
+ */
+public interface TextFont {
+
+    /**
+     * @return the glyph widths of the font, to measure text with.
+     */
+    GlyphWidthTable getGlyphWidthTable();
+
+    /**
+     * @return the height of the bounding box of the font, in glyph space units (1/1000 of the font size).
+     */
+    float getBoundingBoxHeight();
+
+    /**
+     * @return the factor the bounding box height is multiplied with to get the height of a line.
+     */
+    float getErrorMarginY();
+}
@@ -0,0 +1,106 @@
+package com.viae.common.pdf.service.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.viae.common.pdf.service.impl.BatchResult.JobFailure;
+import com.viae.common.utils.validate.Validate;
+
+/**
+ * Renders many documents in parallel on an executor.
+ * Jobs are taken from the job iterator only when fewer than the maximum number of jobs are in progress,
+ * so a (lazy) iterator over a huge batch never has more than that number of jobs in memory.
+ * The builders are reused for the documents of a batch, there are never more builders than jobs in progress.
+ *
+ * @author Vandeperre Maarten
+ */
+public class BatchRenderer {
+    private final ExecutorService executor;
+    private final int maxJobsInProgress;
+    private ImageCache imageCache;
+
+    /**
+     * @param executor, the executor to render the documents on, it isn't shut down by the renderer.
+     * @param maxJobsInProgress, the maximum number of jobs that are submitted to the executor at the same time.
+     */
+    public BatchRenderer(final ExecutorService executor, final int maxJobsInProgress) {
+        Validate.notNull(executor, "executor should be provided");
+        Validate.isTrue(maxJobsInProgress > 0, "max jobs in progress should be positive");
+        this.executor = executor;
+        this.maxJobsInProgress = maxJobsInProgress;
+    }
+
+    /**
+     * @return an executor with a virtual thread per job when the jvm supports virtual threads,
+     *  otherwise a thread pool with a thread per available processor.
+     */
+    public static ExecutorService newDefaultExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (final ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    /**
+     * @param imageCache, cache to share loaded images between all documents of the batch, null to load the images for every document.
+     */
+    public void setImageCache(final ImageCache imageCache) {
+        this.imageCache = imageCache;
+    }
+
+    /**
+     * Render all jobs and wait until they are done.
+     * A failing job is reported in the result and doesn't stop the other jobs.
+     *
+     * @param jobs, the jobs to render.
+     * @return the aggregated result of the batch.
+     * @throws InterruptedException when the calling thread is interrupted while waiting for the jobs.
+     */
+    public BatchResult render(final Iterator<? extends RenderJob> jobs) throws InterruptedException {
+        final long start = System.nanoTime();
+        final Semaphore permits = new Semaphore(maxJobsInProgress);
+        final ConcurrentLinkedQueue<JobFailure> failures = new ConcurrentLinkedQueue<>();
+        final AtomicLong bytesWritten = new AtomicLong();
+        final BuilderPool builders = new BuilderPool(imageCache);
+        int jobCount = 0;
+        try{
+            while(jobs.hasNext()){
+                final RenderJob job = jobs.next();
+                permits.acquire();
+                try{
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try{
+                                bytesWritten.addAndGet(job.render(builders));
+                            } catch(final RuntimeException e){
+                                failures.add(new JobFailure(job.getId(), e));
+                            } catch(final Error e){
+                                failures.add(new JobFailure(job.getId(), e));
+                                throw e;
+                            } finally {
+                                permits.release();
+                            }
+                        }
+                    });
+                } catch(final RejectedExecutionException e){
+                    permits.release();
+                    throw e;
+                }
+                jobCount++;
+            }
+        } finally {
+            //wait for the submitted jobs, also when submitting failed
+            permits.acquireUninterruptibly(maxJobsInProgress);
+            permits.release(maxJobsInProgress);
+        }
+        return new BatchResult(jobCount, new ArrayList<>(failures), bytesWritten.get(), System.nanoTime() - start);
+    }
+}
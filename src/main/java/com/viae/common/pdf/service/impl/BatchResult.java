@@ -0,0 +1,88 @@
+package com.viae.common.pdf.service.impl;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregated result of rendering a batch of documents.
+ *
+ * @author Vandeperre Maarten
+ */
+public final class BatchResult {
+    private final int jobCount;
+    private final List<JobFailure> failures;
+    private final long bytesWritten;
+    private final long elapsedNanos;
+
+    BatchResult(final int jobCount, final List<JobFailure> failures, final long bytesWritten, final long elapsedNanos) {
+        this.jobCount = jobCount;
+        this.failures = Collections.unmodifiableList(failures);
+        this.bytesWritten = bytesWritten;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the number of jobs in the batch.
+     */
+    public int getJobCount() {
+        return jobCount;
+    }
+
+    /**
+     * @return the number of documents that were rendered successfully.
+     */
+    public int getSuccessCount() {
+        return jobCount - failures.size();
+    }
+
+    /**
+     * @return the jobs that failed, a failing job doesn't influence the other jobs of the batch.
+     */
+    public List<JobFailure> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return the number of bytes written by the successful jobs.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @param unit, the time unit of the result.
+     * @return the wall clock time it took to render the batch.
+     */
+    public long getElapsedTime(final TimeUnit unit) {
+        return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the number of successfully rendered documents per second.
+     */
+    public double getDocumentsPerSecond() {
+        return elapsedNanos == 0 ? 0 : getSuccessCount() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    /**
+     * A job of the batch that couldn't be rendered.
+     */
+    public static final class JobFailure {
+        private final String jobId;
+        private final Throwable cause;
+
+        JobFailure(final String jobId, final Throwable cause) {
+            this.jobId = jobId;
+            this.cause = cause;
+        }
+
+        public String getJobId() {
+            return jobId;
+        }
+
+        public Throwable getCause() {
+            return cause;
+        }
+    }
+}
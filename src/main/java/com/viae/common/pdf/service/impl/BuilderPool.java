@@ -0,0 +1,65 @@
+package com.viae.common.pdf.service.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Builders to reuse for the documents of a batch, instead of creating a builder (with its context and buffers) per document.
+ * A builder is taken by one job at a time and is reset when it is released,
+ * so there are never more builders than jobs in progress.
+ * Configuration changed by a job (e.g. a client that sets streaming or a render listener) is undone on release,
+ * every job starts with the configuration of the batch.
+ *
+ * @author Vandeperre Maarten
+ */
+final class BuilderPool {
+    private final ImageCache imageCache;
+    private final Queue<StringPdfBuilder> stringPdfBuilders = new ConcurrentLinkedQueue<>();
+    private final Queue<JavaPdfBuilder> javaPdfBuilders = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param imageCache, the image cache the builders share, can be null.
+     */
+    BuilderPool(final ImageCache imageCache) {
+        this.imageCache = imageCache;
+    }
+
+    /**
+     * @return an idle builder, or a new one when all builders are in use.
+     */
+    StringPdfBuilder takeStringPdfBuilder() {
+        final StringPdfBuilder builder = stringPdfBuilders.poll();
+        return builder != null ? builder : configure(new StringPdfBuilder());
+    }
+
+    /**
+     * @return an idle builder, or a new one when all builders are in use.
+     */
+    JavaPdfBuilder takeJavaPdfBuilder() {
+        final JavaPdfBuilder builder = javaPdfBuilders.poll();
+        return builder != null ? builder : configure(new JavaPdfBuilder());
+    }
+
+    /**
+     * @param builder, the builder to reset and to give to the next job, it shouldn't be used by the releasing job anymore.
+     */
+    void release(final StringPdfBuilder builder) {
+        stringPdfBuilders.offer(configure(builder));
+    }
+
+    /**
+     * @param builder, the builder to reset and to give to the next job, it shouldn't be used by the releasing job anymore.
+     */
+    void release(final JavaPdfBuilder builder) {
+        javaPdfBuilders.offer(configure(builder));
+    }
+
+    /**
+     * Give the builder the configuration of the batch, a released builder is reset to the configuration of a new builder first.
+     */
+    private <T extends PdfBuilder> T configure(final T builder) {
+        builder.resetConfiguration();
+        builder.setImageCache(imageCache);
+        return builder;
+    }
+}
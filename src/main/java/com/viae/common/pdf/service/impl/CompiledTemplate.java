@@ -0,0 +1,61 @@
+package com.viae.common.pdf.service.impl;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A string based template that is parsed once into a list of instructions.
+ * A compiled template is immutable, so it can be cached and rendered many times (also concurrently) by {@link StringPdfBuilder}s.
+ *
+ * @author Vandeperre Maarten
+ */
+public final class CompiledTemplate {
+    private final List<TemplateInstruction> instructions;
+
+    private CompiledTemplate(final List<TemplateInstruction> instructions) {
+        this.instructions = Collections.unmodifiableList(instructions);
+    }
+
+    /**
+     * @param template, the template content.
+     * @return the compiled template.
+     */
+    public static CompiledTemplate compile(final String template) {
+        try {
+            return compile(new StringReader(template));
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param template, the reader to read the template content from. The reader is not closed.
+     * @return the compiled template.
+     * @throws IOException when the template can't be read.
+     */
+    public static CompiledTemplate compile(final Reader template) throws IOException {
+        final List<TemplateInstruction> instructions = new ArrayList<>();
+        final InstructionReader instructionReader = new InstructionReader(template);
+        TemplateInstruction instruction = instructionReader.readInstruction();
+        while(instruction != null){
+            instructions.add(instruction);
+            instruction = instructionReader.readInstruction();
+        }
+        return new CompiledTemplate(instructions);
+    }
+
+    /**
+     * @return the number of instructions of the template.
+     */
+    public int size() {
+        return instructions.size();
+    }
+
+    List<TemplateInstruction> getInstructions() {
+        return instructions;
+    }
+}
@@ -0,0 +1,81 @@
+package com.viae.common.pdf.service.impl;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the content lines of a string based template one by one.
+ * A content line ends with '|EOL|' followed by a (windows or unix) line break,
+ * only the content line that is being read is kept in memory.
+ *
+ * @author Vandeperre Maarten
+ */
+final class ContentLineReader {
+    private static final String END_OF_LINE = "|EOL|";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder contentLine = new StringBuilder();
+    private int bufferLength;
+    private int bufferPosition;
+
+    ContentLineReader(final Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @return the next content line, without the '|EOL|' marker and line break,
+     *  or null when the end of the template is reached.
+     * @throws IOException when the template can't be read.
+     */
+    String readContentLine() throws IOException {
+        contentLine.setLength(0);
+        while(fillBuffer()){
+            final char character = buffer[bufferPosition++];
+            if(character == '\n'){
+                final int markerLength = getEndOfLineMarkerLength();
+                if(markerLength > 0){
+                    contentLine.setLength(contentLine.length() - markerLength);
+                    return contentLine.toString();
+                }
+            }
+            contentLine.append(character);
+        }
+        //the remainder after the last line break is only a content line when it isn't empty
+        return contentLine.length() > 0 ? contentLine.toString() : null;
+    }
+
+    private boolean fillBuffer() throws IOException {
+        if(bufferPosition < bufferLength){
+            return true;
+        }
+        bufferPosition = 0;
+        bufferLength = reader.read(buffer, 0, buffer.length);
+        while(bufferLength == 0){
+            bufferLength = reader.read(buffer, 0, buffer.length);
+        }
+        return bufferLength > 0;
+    }
+
+    private int getEndOfLineMarkerLength() {
+        final int length = contentLine.length();
+        if(length > 0 && contentLine.charAt(length - 1) == '\r' && endsWithMarker(length - 1)){
+            return END_OF_LINE.length() + 1;
+        }
+        return endsWithMarker(length) ? END_OF_LINE.length() : 0;
+    }
+
+    private boolean endsWithMarker(final int end) {
+        final int start = end - END_OF_LINE.length();
+        if(start < 0){
+            return false;
+        }
+        for(int i = 0; i < END_OF_LINE.length(); i++){
+            if(contentLine.charAt(start + i) != END_OF_LINE.charAt(i)){
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,43 @@
+package com.viae.common.pdf.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The laid out pages of a document.
+ * The number of pages is known before anything is painted, and the same layout can be painted multiple times
+ * (see {@link PdfBuilder#buildPdf(DocumentLayout, PdfOutput)}).
+ *
+ * @author Vandeperre Maarten
+ */
+public final class DocumentLayout {
+    private final List<PageLayout> pages;
+    private final RenderStatistics statistics;
+
+    DocumentLayout(final List<PageLayout> pages, final RenderStatistics statistics) {
+        this.pages = Collections.unmodifiableList(new ArrayList<>(pages));
+        this.statistics = statistics;
+    }
+
+    /**
+     * @return the number of pages.
+     */
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * @return the pages, in order.
+     */
+    public List<PageLayout> getPages() {
+        return pages;
+    }
+
+    /**
+     * @return the statistics of the layout phase, null when nothing was measured.
+     */
+    RenderStatistics getStatistics() {
+        return statistics;
+    }
+}
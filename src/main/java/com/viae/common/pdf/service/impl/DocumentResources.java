@@ -0,0 +1,86 @@
+package com.viae.common.pdf.service.impl;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectImage;
+
+import com.viae.common.pdf.model.EmbeddedFont;
+import com.viae.common.pdf.model.FontFamily;
+import com.viae.common.pdf.model.TextFont;
+import com.viae.common.pdf.service.impl.ImageCache.ImageKey;
+
+/**
+ * The resources that are shared by the pages of a document: the embedded images and fonts.
+ * Every distinct image is embedded once, every embedded font is embedded once as a subset of the characters used in the whole document,
+ * so the fonts can only be embedded once all pages are known (see {@link PagePainter#embedResources(PageLayout)}).
+ *
+ * @author Vandeperre Maarten
+ */
+final class DocumentResources {
+    private final Map<ImageKey, PDXObjectImage> images = new HashMap<>();
+    private final Map<EmbeddedFont, BitSet> usedCharacters = new HashMap<>();
+    private final Map<EmbeddedFont, PDFont> fonts = new HashMap<>();
+
+    PDXObjectImage getImage(final ImageKey key) {
+        return images.get(key);
+    }
+
+    void putImage(final ImageKey key, final PDXObjectImage image) {
+        images.put(key, image);
+    }
+
+    /**
+     * Mark the characters of the text as used, for fonts that are embedded.
+     *
+     * @param font, the font the text is written with.
+     * @param text, the text.
+     */
+    void useCharacters(final TextFont font, final String text) {
+        if(!(font instanceof EmbeddedFont)){
+            return;
+        }
+        BitSet characters = usedCharacters.get(font);
+        if(characters == null){
+            characters = new BitSet();
+            usedCharacters.put((EmbeddedFont) font, characters);
+        }
+        for(int i = 0; i < text.length(); i++){
+            characters.set(text.charAt(i));
+        }
+    }
+
+    /**
+     * Embed a subset of every used font in the document, with the characters used so far.
+     *
+     * @param document, the document to embed the fonts in.
+     * @throws IOException when a font can't be embedded.
+     */
+    void embedFonts(final PDDocument document) throws IOException {
+        for(final Map.Entry<EmbeddedFont, BitSet> entry : usedCharacters.entrySet()){
+            if(!fonts.containsKey(entry.getKey())){
+                fonts.put(entry.getKey(), entry.getKey().embedSubset(document, entry.getValue()));
+            }
+        }
+    }
+
+    /**
+     * @param font, the font of a text.
+     * @return the font to write the text with.
+     * @throws IllegalStateException when the font should be embedded, but it isn't.
+     */
+    PDFont getFont(final TextFont font) {
+        if(font instanceof FontFamily){
+            return ((FontFamily) font).getFontFamily();
+        }
+        final PDFont embedded = fonts.get(font);
+        if(embedded == null){
+            throw new IllegalStateException(String.format("font %s should be embedded before the pages are painted", font));
+        }
+        return embedded;
+    }
+}
@@ -0,0 +1,340 @@
+package com.viae.common.pdf.service.impl;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDJpeg;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDPixelMap;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectImage;
+
+import com.viae.common.pdf.service.impl.PdfBuilder.ImageType;
+import com.viae.common.utils.validate.Validate;
+
+/**
+ * Cache of loaded images that can be shared between documents (and builders on different threads).
+ * Jpeg images are kept as file content, other images are kept decoded, so they are never read or decoded twice.
+ * Downsampled images are cached per size, next to their original.
+ * When the cache exceeds its maximum size, the least recently used images are evicted.
+ *
+ * @author Vandeperre Maarten
+ */
+public class ImageCache {
+    private static final int BYTES_PER_PIXEL = 4;
+    private static final int OPAQUE = 255;
+
+    private final long maxSize;
+    private final Map<ImageKey, ImageData> images = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * @param maxSize, the maximum number of bytes the cached images may take (decoded images count 4 bytes per pixel).
+     */
+    public ImageCache(final long maxSize) {
+        Validate.isTrue(maxSize > 0, "max size should be positive");
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param file, the image file.
+     * @param type, the image type.
+     * @return the cached image data, loaded from the file when it isn't cached (anymore).
+     * @throws IOException when the image can't be read.
+     */
+    ImageData load(final File file, final ImageType type) throws IOException {
+        final ImageKey key = new ImageKey(file, type);
+        final ImageData cached = get(key);
+        if(cached != null){
+            return cached;
+        }
+        final ImageData loaded = ImageData.read(file, type);
+        put(key, loaded);
+        return loaded;
+    }
+
+    /**
+     * @param key, the key of the downsampled image (see {@link ImageKey#downsampled(int, int, float)}).
+     * @param source, the image to downsample.
+     * @return the cached downsampled image, downsampled from the source when it isn't cached (anymore).
+     * @throws IOException when the image can't be decoded or encoded.
+     */
+    ImageData downsample(final ImageKey key, final ImageData source) throws IOException {
+        final ImageData cached = get(key);
+        if(cached != null){
+            return cached;
+        }
+        final ImageData downsampled = source.downsample(key);
+        put(key, downsampled);
+        return downsampled;
+    }
+
+    private synchronized ImageData get(final ImageKey key) {
+        final ImageData cached = images.get(key);
+        if(cached != null){
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return cached;
+    }
+
+    private synchronized void put(final ImageKey key, final ImageData data) {
+        if(data.getSize() > maxSize){
+            return;
+        }
+        final ImageData previous = images.put(key, data);
+        size += data.getSize() - (previous == null ? 0 : previous.getSize());
+        final Iterator<ImageData> eldest = images.values().iterator();
+        while(size > maxSize && eldest.hasNext()){
+            size -= eldest.next().getSize();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @return the number of bytes taken by the cached images.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of images that were served from the cache.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of images that had to be loaded.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Identifies an image file: a changed file (other size or modification time) is a different image.
+     * A downsampled image is identified by its file and its size and quality.
+     */
+    static final class ImageKey {
+        private final String path;
+        private final long length;
+        private final long lastModified;
+        private final ImageType type;
+        private final int width;
+        private final int height;
+        private final float quality;
+
+        ImageKey(final File file, final ImageType type) {
+            this(file.getAbsolutePath(), file.length(), file.lastModified(), type, 0, 0, 0);
+        }
+
+        private ImageKey(final String path, final long length, final long lastModified, final ImageType type, final int width, final int height, final float quality) {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.type = type;
+            this.width = width;
+            this.height = height;
+            this.quality = quality;
+        }
+
+        /**
+         * @param width, the width in pixels to downsample the image to.
+         * @param height, the height in pixels to downsample the image to.
+         * @param quality, the jpeg quality to encode the downsampled image with.
+         * @return the key of the image downsampled to the given size.
+         */
+        ImageKey downsampled(final int width, final int height, final float quality) {
+            return new ImageKey(path, length, lastModified, type, width, height, quality);
+        }
+
+        @Override
+        public int hashCode() {
+            return (path.hashCode() * 31 + type.hashCode()) * 31 + width;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if(!(o instanceof ImageKey)){
+                return false;
+            }
+            final ImageKey other = (ImageKey) o;
+            return path.equals(other.path) && length == other.length && lastModified == other.lastModified && type == other.type
+                    && width == other.width && height == other.height && quality == other.quality;
+        }
+    }
+
+    /**
+     * Image content that doesn't depend on a document: the jpeg file content or the decoded image.
+     */
+    static final class ImageData {
+        private final byte[] jpeg;
+        private final BufferedImage image;
+        private final int width;
+        private final int height;
+
+        private ImageData(final byte[] jpeg, final BufferedImage image, final int width, final int height) {
+            this.jpeg = jpeg;
+            this.image = image;
+            this.width = width;
+            this.height = height;
+        }
+
+        static ImageData read(final File file, final ImageType type) throws IOException {
+            switch (type) {
+                case JPEG:
+                    return readJpeg(file, Files.readAllBytes(file.toPath()));
+                default:
+                    final BufferedImage image = ImageIO.read(file);
+                    if(image == null){
+                        throw new IOException(String.format("%s is not a supported image", file));
+                    }
+                    return new ImageData(null, image, image.getWidth(), image.getHeight());
+            }
+        }
+
+        /**
+         * Only the header of the jpeg is read to know its dimensions, the jpeg is embedded as is.
+         */
+        private static ImageData readJpeg(final File file, final byte[] jpeg) throws IOException {
+            try(final ImageInputStream stream = ImageIO.createImageInputStream(new ByteArrayInputStream(jpeg))){
+                final Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+                if(!readers.hasNext()){
+                    throw new IOException(String.format("%s is not a supported image", file));
+                }
+                final ImageReader reader = readers.next();
+                try{
+                    reader.setInput(stream);
+                    return new ImageData(jpeg, null, reader.getWidth(0), reader.getHeight(0));
+                } finally {
+                    reader.dispose();
+                }
+            }
+        }
+
+        int getWidth() {
+            return width;
+        }
+
+        int getHeight() {
+            return height;
+        }
+
+        long getSize() {
+            return jpeg != null ? jpeg.length : (long) image.getWidth() * image.getHeight() * BYTES_PER_PIXEL;
+        }
+
+        /**
+         * Scale the image down to the size of the key, halving it step by step so every pixel still contributes to the result.
+         * The downsampled image is encoded as jpeg, unless it has transparent pixels, then it is kept decoded (and embedded lossless).
+         *
+         * @param key, the key of the downsampled image, with its size and jpeg quality.
+         * @return the downsampled image.
+         * @throws IOException when the image can't be decoded or encoded.
+         */
+        ImageData downsample(final ImageKey key) throws IOException {
+            BufferedImage scaled = decode();
+            final boolean alpha = scaled.getColorModel().hasAlpha();
+            int width = scaled.getWidth();
+            int height = scaled.getHeight();
+            do{
+                width = Math.max(key.width, width / 2);
+                height = Math.max(key.height, height / 2);
+                scaled = scale(scaled, width, height, alpha);
+            } while(width > key.width || height > key.height);
+            if(alpha && isTransparent(scaled)){
+                return new ImageData(null, scaled, width, height);
+            }
+            return new ImageData(encodeJpeg(alpha ? scale(scaled, width, height, false) : scaled, key.quality), null, width, height);
+        }
+
+        private BufferedImage decode() throws IOException {
+            if(image != null){
+                return image;
+            }
+            final BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(jpeg));
+            if(decoded == null){
+                throw new IOException("the jpeg image can't be decoded");
+            }
+            return decoded;
+        }
+
+        private static BufferedImage scale(final BufferedImage source, final int width, final int height, final boolean alpha) {
+            final BufferedImage scaled = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            final Graphics2D graphics = scaled.createGraphics();
+            try{
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                if(!alpha){
+                    //transparent pixels of an opaque result become white, as on a page
+                    graphics.setColor(Color.WHITE);
+                    graphics.fillRect(0, 0, width, height);
+                }
+                graphics.drawImage(source, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            return scaled;
+        }
+
+        private static boolean isTransparent(final BufferedImage image) {
+            final Raster alpha = image.getAlphaRaster();
+            final int[] row = new int[image.getWidth()];
+            for(int y = 0; y < image.getHeight(); y++){
+                alpha.getSamples(0, y, row.length, 1, 0, row);
+                for(final int sample : row){
+                    if(sample != OPAQUE){
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static byte[] encodeJpeg(final BufferedImage image, final float quality) throws IOException {
+            final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try(final ImageOutputStream stream = ImageIO.createImageOutputStream(bytes)){
+                final ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality);
+                writer.setOutput(stream);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            return bytes.toByteArray();
+        }
+
+        PDXObjectImage createXObject(final PDDocument document) throws IOException {
+            if(jpeg != null){
+                try(InputStream stream = new ByteArrayInputStream(jpeg)){
+                    return new PDJpeg(document, stream);
+                }
+            }
+            return new PDPixelMap(document, image);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.viae.common.pdf.service.impl;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.viae.common.pdf.service.impl.ImageCache.ImageData;
+import com.viae.common.pdf.service.impl.ImageCache.ImageKey;
+
+/**
+ * Loads the images of a document in the background, ahead of the layout.
+ * The images are requested in the order the layout will need them, only a limited number of images is loaded ahead,
+ * so the decoded images of a large catalogue don't all have to fit in memory at once.
+ * Requesting and taking images is done by the layout thread only, the images are loaded on the executor.
+ *
+ * @author Vandeperre Maarten
+ */
+final class ImagePrefetcher {
+    private final Executor executor;
+    private final int maxImagesAhead;
+    private final Set<ImageKey> requested = new HashSet<>();
+    private final Map<ImageKey, Callable<ImageData>> waiting = new LinkedHashMap<>();
+    private final Map<ImageKey, FutureTask<ImageData>> loading = new HashMap<>();
+
+    /**
+     * @param executor, the executor to load the images on.
+     * @param maxImagesAhead, the maximum number of images that are loading or loaded but not taken yet.
+     */
+    ImagePrefetcher(final Executor executor, final int maxImagesAhead) {
+        this.executor = executor;
+        this.maxImagesAhead = maxImagesAhead;
+    }
+
+    /**
+     * Request an image the layout will need, an image that is already requested isn't loaded twice.
+     *
+     * @param key, the image.
+     * @param loader, loads the image.
+     */
+    void request(final ImageKey key, final Callable<ImageData> loader) {
+        if(requested.add(key)){
+            waiting.put(key, loader);
+            startLoading();
+        }
+    }
+
+    /**
+     * @param key, the image.
+     * @return the loaded image, waiting for it when it is still loading, null when the image wasn't requested or isn't loading yet.
+     * @throws IOException when the image can't be read.
+     */
+    ImageData take(final ImageKey key) throws IOException {
+        final FutureTask<ImageData> task = loading.remove(key);
+        if(task == null){
+            //the layout reached the image before it was loaded, the caller loads it now
+            waiting.remove(key);
+            startLoading();
+            return null;
+        }
+        startLoading();
+        return get(task);
+    }
+
+    /**
+     * Forget the requested images, images that are still loading are cancelled.
+     */
+    void clear() {
+        for(final Future<ImageData> task : loading.values()){
+            task.cancel(true);
+        }
+        loading.clear();
+        waiting.clear();
+        requested.clear();
+    }
+
+    private void startLoading() {
+        final Iterator<Map.Entry<ImageKey, Callable<ImageData>>> next = waiting.entrySet().iterator();
+        while(loading.size() < maxImagesAhead && next.hasNext()){
+            final Map.Entry<ImageKey, Callable<ImageData>> image = next.next();
+            next.remove();
+            final FutureTask<ImageData> task = new FutureTask<>(image.getValue());
+            try{
+                executor.execute(task);
+                loading.put(image.getKey(), task);
+            } catch(final RejectedExecutionException e){
+                //the layout loads the image itself
+            }
+        }
+    }
+
+    private static ImageData get(final Future<ImageData> task) throws IOException {
+        try {
+            return task.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (final ExecutionException e) {
+            if(e.getCause() instanceof IOException){
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
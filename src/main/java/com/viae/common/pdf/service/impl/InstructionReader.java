@@ -0,0 +1,84 @@
+package com.viae.common.pdf.service.impl;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.viae.common.pdf.service.impl.TemplateInstruction.TableInstruction;
+import com.viae.common.utils.validate.Validate;
+
+/**
+ * Reads the instructions of a string based template one by one.
+ * Consecutive table rows and repeated sections with the same number of columns are read as one table,
+ * so the table is laid out in a single pass (only the rows of that table are kept in memory).
+ *
+ * @author Vandeperre Maarten
+ */
+final class InstructionReader {
+    private final ContentLineReader lineReader;
+    private TemplateInstruction next;
+
+    InstructionReader(final Reader reader) {
+        this.lineReader = new ContentLineReader(reader);
+    }
+
+    /**
+     * @return the next instruction, or null when the end of the template is reached.
+     * @throws IOException when the template can't be read.
+     */
+    TemplateInstruction readInstruction() throws IOException {
+        final TemplateInstruction instruction = next != null ? next : parseNext();
+        next = null;
+        if(!(instruction instanceof TableInstruction)){
+            return instruction;
+        }
+        final TableInstruction table = (TableInstruction) instruction;
+        next = parseNext();
+        if(!isSameTable(table, next)){
+            return table;
+        }
+        final List<TableInstruction> tables = new ArrayList<>();
+        tables.add(table);
+        while(isSameTable(table, next)){
+            tables.add((TableInstruction) next);
+            next = parseNext();
+        }
+        return TableInstruction.merge(tables);
+    }
+
+    private static boolean isSameTable(final TableInstruction table, final TemplateInstruction instruction) {
+        return instruction instanceof TableInstruction && ((TableInstruction) instruction).getColumnCount() == table.getColumnCount();
+    }
+
+    private TemplateInstruction parseNext() throws IOException {
+        String contentLine = lineReader.readContentLine();
+        while(contentLine != null){
+            if(TemplateInstruction.isRepeatStart(contentLine)){
+                return readRepeat(contentLine);
+            }
+            final TemplateInstruction instruction = TemplateInstruction.parse(contentLine);
+            if(instruction != null){
+                return instruction;
+            }
+            contentLine = lineReader.readContentLine();
+        }
+        return null;
+    }
+
+    private TableInstruction readRepeat(final String repeatLine) throws IOException {
+        final List<TableInstruction> rows = new ArrayList<>();
+        String contentLine = lineReader.readContentLine();
+        while(contentLine != null && !TemplateInstruction.isRepeatEnd(contentLine)){
+            Validate.isTrue(!TemplateInstruction.isRepeatStart(contentLine), "repeated sections can't be nested");
+            final TemplateInstruction instruction = TemplateInstruction.parse(contentLine);
+            if(instruction != null){
+                Validate.isTrue(instruction instanceof TableInstruction, "a repeated section can only contain table rows");
+                rows.add((TableInstruction) instruction);
+            }
+            contentLine = lineReader.readContentLine();
+        }
+        Validate.isTrue(contentLine != null, "a repeated section should end with 'end_repeat|EOL|'");
+        return TemplateInstruction.parseRepeat(repeatLine, rows);
+    }
+}
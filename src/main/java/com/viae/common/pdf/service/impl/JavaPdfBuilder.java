@@ -2,57 +2,119 @@ package com.viae.common.pdf.service.impl;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
-import org.apache.pdfbox.exceptions.COSVisitorException;
-import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
 
 import com.viae.common.pdf.model.PdfContext;
+import com.viae.common.utils.validate.Validate;
 
 public class JavaPdfBuilder extends PdfBuilder {
 
     private PDPage pageState;
 
-    public JavaPdfBuilder(){
-        context = PdfContext.builder().create().build();
-    }
-
-    protected static interface BuilderClient {
+    public static interface BuilderClient {
         void whenBuilding(JavaPdfBuilder builder);
     }
 
     public void buildPdf(final BuilderClient client, final PageSize pageSize, final String path){
-        try(final PDDocument document = new PDDocument()){
-            this.document = document;
-            this.pageState = new PDPage(getPageSize(pageSize));
-            document.addPage(pageState);
-            initPageStart(pageState.findMediaBox());
-
-            try(final PDPageContentStream cos = new PDPageContentStream(document, pageState)){
-                contentStream = cos;
-
-                client.whenBuilding(this);
-                try{
-                    contentStream.close();
-                } catch(final IOException e){
-                    //TODO log debug
-                }
+        buildPdf(client, pageSize, PdfOutput.toFile(path));
+    }
+
+    /**
+     * @param client, the client writing the pdf content.
+     * @param pageSize, the page size of the pdf.
+     * @param stream, the stream to write the pdf to, the stream is not closed.
+     * @return the number of bytes written.
+     */
+    public long buildPdf(final BuilderClient client, final PageSize pageSize, final OutputStream stream){
+        return buildPdf(client, pageSize, PdfOutput.toStream(stream));
+    }
+
+    /**
+     * @param client, the client writing the pdf content.
+     * @param pageSize, the page size of the pdf.
+     * @param channel, the channel to write the pdf to, the channel is not closed.
+     * @return the number of bytes written.
+     */
+    public long buildPdf(final BuilderClient client, final PageSize pageSize, final WritableByteChannel channel){
+        return buildPdf(client, pageSize, PdfOutput.toChannel(channel));
+    }
+
+    /**
+     * @param client, the client writing the pdf content.
+     * @param pageSize, the page size of the pdf.
+     * @param output, the output to save the pdf to.
+     * @return the number of bytes written.
+     */
+    public long buildPdf(final BuilderClient client, final PageSize pageSize, final PdfOutput output){
+        return buildPdf(layout(client, pageSize), output);
+    }
+
+    /**
+     * Render the pdf without blocking the calling thread:
+     * the client writes the content on the cpu executor, the pdf is painted there too and saved on the io executor.
+     * Cancelling the future stops the rendering at the next page, the builder can be reused once the future is completed
+     * (once {@link #whenAsyncRenderStopped()} is completed when the future is cancelled).
+     *
+     * @param client, the client writing the pdf content.
+     * @param pageSize, the page size of the pdf.
+     * @param output, the output to save the pdf to.
+     * @param cpuExecutor, the executor to lay out and paint the pdf on, e.g. a pool with a thread per processor.
+     * @param ioExecutor, the executor to save the pdf on.
+     * @return the future result of the pdf.
+     */
+    public CompletableFuture<RenderResult> buildPdfAsync(final BuilderClient client, final PageSize pageSize, final PdfOutput output,
+            final Executor cpuExecutor, final Executor ioExecutor){
+        Validate.notNull(client, "client should be provided");
+        return buildPdfAsync(new Callable<DocumentLayout>() {
+            @Override
+            public DocumentLayout call() {
+                return layout(client, pageSize);
             }
+        }, output, cpuExecutor, ioExecutor);
+    }
 
-            document.save(path);
-        } catch(final IOException | COSVisitorException e){
-            throw new RuntimeException(e);
+    /**
+     * Lay out the pdf content without painting it, e.g. to know the number of pages up front.
+     *
+     * @param client, the client writing the pdf content.
+     * @param pageSize, the page size of the pdf.
+     * @return the layout, to paint with {@link #buildPdf(DocumentLayout, PdfOutput)}.
+     */
+    public DocumentLayout layout(final BuilderClient client, final PageSize pageSize){
+        final PDPage page = new PDPage(getPageSize(pageSize));
+        startLayout(page.findMediaBox());
+        this.pageState = page;
+        try{
+            client.whenBuilding(this);
+            return finishLayout();
+        } finally {
+            pageState = null;
+            reset();
         }
     }
 
+    /**
+     * @param context, the context of the content written next while laying out a document,
+     * outside a layout the context the next documents start with (see {@link #setDefaultContext(PdfContext)}).
+     * @throws IllegalStateException when another thread is laying out a document with this builder.
+     */
     public void setContext(final PdfContext context) {
-        this.context = context;
+        if(isLayingOutOnCurrentThread()){
+            this.context = context;
+        } else {
+            setDefaultContext(context);
+        }
     }
 
     public void writeText(final String text){
         try {
-            writeText(text, document, pageState.findMediaBox());
+            writeText(text, pageState.findMediaBox());
         }
         catch (final IOException e) {
             throw new RuntimeException(e);
@@ -68,6 +130,32 @@ public class JavaPdfBuilder extends PdfBuilder {
         }
     }
 
+    /**
+     * Write a table with multiple rows, the table is laid out at once and its rows are split over pages when needed.
+     *
+     * @param rows, the rows of the table, every row should have the same number of columns.
+     */
+    public void writeTable(final String[][] rows){
+        try {
+            writeTable(pageState, rows);
+        }
+        catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Request an image that is written later on in the document to be loaded in the background, when an image prefetch executor is set
+     * (see {@link #setImagePrefetch(Executor, int)}), e.g. all photos of a catalogue before writing the first product.
+     * Only images requested while laying out the document are prefetched.
+     *
+     * @param image, the image file.
+     * @param type, the image type.
+     */
+    public void prefetchImage(final File image, final ImageType type){
+        super.prefetchImage(image, type);
+    }
+
     public void writeImage(final File image, final ImageType type, final float maxWidth){
         try {
             writeImage(pageState, image, type, maxWidth);
@@ -88,7 +176,7 @@ public class JavaPdfBuilder extends PdfBuilder {
 
     public void writeNewLine(){
         try {
-            writeNewLine(document, pageState.findMediaBox());
+            writeNewLine(pageState.findMediaBox());
         }
         catch (final IOException e) {
             throw new RuntimeException(e);
@@ -0,0 +1,155 @@
+package com.viae.common.pdf.service.impl;
+
+import java.io.IOException;
+
+import com.viae.common.pdf.model.TextFont;
+import com.viae.common.pdf.service.impl.ImageCache.ImageData;
+import com.viae.common.pdf.service.impl.ImageCache.ImageKey;
+
+/**
+ * A positioned element of a laid out page.
+ * Boxes are immutable: they only hold the result of the layout, the pdf operators are emitted by a {@link PagePainter}.
+ *
+ * @author Vandeperre Maarten
+ */
+abstract class LayoutBox {
+
+    /**
+     * Paint the box.
+     *
+     * @param painter, the painter of the page the box is on.
+     * @throws IOException when the box can't be painted.
+     */
+    abstract void paint(PagePainter painter) throws IOException;
+
+    /**
+     * Embed the resources of the box that are shared between pages (images, the characters of embedded fonts) in the document of the painter.
+     *
+     * @param painter, the painter of the document.
+     * @throws IOException when the resources can't be embedded.
+     */
+    void embed(final PagePainter painter) throws IOException {
+        //most boxes don't have shared resources
+    }
+
+    /**
+     * A single line of text.
+     */
+    static final class TextBox extends LayoutBox {
+        private final String text;
+        private final TextFont font;
+        private final float fontSize;
+        private final float x;
+        private final float y;
+
+        /**
+         * @param text, the text of the line.
+         * @param font, the font of the line.
+         * @param fontSize, the font size of the line.
+         * @param x, the x position of the start of the line.
+         * @param y, the y position of the base line.
+         */
+        TextBox(final String text, final TextFont font, final float fontSize, final float x, final float y) {
+            this.text = text;
+            this.font = font;
+            this.fontSize = fontSize;
+            this.x = x;
+            this.y = y;
+        }
+
+        String getText() {
+            return text;
+        }
+
+        float getX() {
+            return x;
+        }
+
+        float getY() {
+            return y;
+        }
+
+        @Override
+        void paint(final PagePainter painter) throws IOException {
+            painter.showText(text, font, fontSize, x, y);
+        }
+
+        @Override
+        void embed(final PagePainter painter) {
+            painter.useFont(font, text);
+        }
+    }
+
+    /**
+     * An image, scaled to the given width and height.
+     */
+    static final class ImageBox extends LayoutBox {
+        private final ImageKey key;
+        private final ImageData image;
+        private final float x;
+        private final float y;
+        private final float width;
+        private final float height;
+
+        /**
+         * @param key, the key of the image, every distinct image is embedded once per document.
+         * @param image, the image.
+         * @param x, the x position of the lower left corner.
+         * @param y, the y position of the lower left corner.
+         * @param width, the width to draw the image with.
+         * @param height, the height to draw the image with.
+         */
+        ImageBox(final ImageKey key, final ImageData image, final float x, final float y, final float width, final float height) {
+            this.key = key;
+            this.image = image;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        float getY() {
+            return y;
+        }
+
+        float getHeight() {
+            return height;
+        }
+
+        @Override
+        void paint(final PagePainter painter) throws IOException {
+            painter.drawImage(key, image, x, y, width, height);
+        }
+
+        @Override
+        void embed(final PagePainter painter) throws IOException {
+            painter.embedImage(key, image);
+        }
+    }
+
+    /**
+     * Straight lines that are stroked together as one path.
+     */
+    static final class PathBox extends LayoutBox {
+        private final float lineWidth;
+        private final float[] lines;
+
+        /**
+         * @param lineWidth, the width to stroke the lines with.
+         * @param lines, the coordinates of the lines, 4 per line (x start, y start, x end, y end).
+         */
+        PathBox(final float lineWidth, final float[] lines) {
+            this.lineWidth = lineWidth;
+            this.lines = lines;
+        }
+
+        int getLineCount() {
+            return lines.length / 4;
+        }
+
+        @Override
+        void paint(final PagePainter painter) throws IOException {
+            painter.strokeLines(lineWidth, lines);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.viae.common.pdf.service.impl;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSDocument;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import com.viae.common.utils.validate.Validate;
+
+/**
+ * Where a document keeps the content of its streams (page contents, images, fonts) while it is being built.
+ * By default everything is kept in heap, for very large documents the streams can be kept in a scratch file instead.
+ *
+ * @author Vandeperre Maarten
+ */
+public abstract class MemoryPolicy {
+    private static final MemoryPolicy HEAP = new MemoryPolicy() {
+        @Override
+        PDDocument createDocument() {
+            return new PDDocument();
+        }
+    };
+
+    private MemoryPolicy() {
+    }
+
+    /**
+     * Create a new, empty document that keeps its streams according to this policy.
+     * Closing the document releases its scratch file.
+     *
+     * @return the new document.
+     * @throws IOException when the scratch file can't be created.
+     */
+    abstract PDDocument createDocument() throws IOException;
+
+    /**
+     * @return a policy keeping the streams in heap.
+     */
+    public static MemoryPolicy heap() {
+        return HEAP;
+    }
+
+    /**
+     * @param directory, the directory to create the scratch files in.
+     * @return a policy keeping the streams in a scratch file, the file is deleted when the document is closed.
+     */
+    public static MemoryPolicy scratchFile(final File directory) {
+        Validate.isTrue(directory.isDirectory(), "scratch directory should exist");
+        return new MemoryPolicy() {
+            @Override
+            PDDocument createDocument() throws IOException {
+                return newDocument(new COSDocument(directory, false));
+            }
+        };
+    }
+
+    /**
+     * @param maxHeapSize, the number of bytes of stream content that may be kept in heap.
+     * @param directory, the directory to create the scratch files in.
+     * @return a policy keeping the streams in heap until they exceed the max heap size, from then on all stream content is moved to a scratch file.
+     */
+    public static MemoryPolicy heapLimit(final long maxHeapSize, final File directory) {
+        Validate.isTrue(maxHeapSize > 0, "max heap size should be positive");
+        Validate.isTrue(directory.isDirectory(), "scratch directory should exist");
+        return new MemoryPolicy() {
+            @Override
+            PDDocument createDocument() {
+                return newDocument(new COSDocument(new SpillingScratchBuffer(maxHeapSize, directory), false));
+            }
+        };
+    }
+
+    /**
+     * Wrap an empty cos document into a new document, the same way {@link PDDocument#PDDocument()} initializes its document.
+     */
+    private static PDDocument newDocument(final COSDocument document) {
+        final COSDictionary pages = new COSDictionary();
+        pages.setItem(COSName.TYPE, COSName.PAGES);
+        pages.setItem(COSName.KIDS, new COSArray());
+        pages.setItem(COSName.COUNT, COSInteger.ZERO);
+
+        final COSDictionary root = new COSDictionary();
+        root.setItem(COSName.TYPE, COSName.CATALOG);
+        root.setItem(COSName.VERSION, COSName.getPDFName("1.4"));
+        root.setItem(COSName.PAGES, pages);
+
+        final COSDictionary trailer = new COSDictionary();
+        trailer.setItem(COSName.ROOT, root);
+        document.setTrailer(trailer);
+        return new PDDocument(document);
+    }
+}
@@ -0,0 +1,51 @@
+package com.viae.common.pdf.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+/**
+ * The positioned boxes of a single page, in paint order.
+ * A page layout doesn't depend on a document, so it can be painted (again) in any document.
+ *
+ * @author Vandeperre Maarten
+ */
+public final class PageLayout {
+    private final float width;
+    private final float height;
+    private final List<LayoutBox> boxes = new ArrayList<>();
+
+    PageLayout(final PDRectangle pageSize) {
+        this.width = pageSize.getWidth();
+        this.height = pageSize.getHeight();
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the number of boxes on the page.
+     */
+    public int getBoxCount() {
+        return boxes.size();
+    }
+
+    void add(final LayoutBox box) {
+        boxes.add(box);
+    }
+
+    List<LayoutBox> getBoxes() {
+        return Collections.unmodifiableList(boxes);
+    }
+
+    PDRectangle createMediaBox() {
+        return new PDRectangle(width, height);
+    }
+}
@@ -0,0 +1,132 @@
+package com.viae.common.pdf.service.impl;
+
+import java.io.IOException;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectImage;
+
+import com.viae.common.pdf.model.TextFont;
+import com.viae.common.pdf.service.impl.ImageCache.ImageData;
+import com.viae.common.pdf.service.impl.ImageCache.ImageKey;
+
+/**
+ * Paints laid out pages into a document: emits the pdf operators for the boxes of a page.
+ * Consecutive text boxes are written in one text object, every distinct image and font is embedded only once per document.
+ *
+ * @author Vandeperre Maarten
+ */
+final class PagePainter {
+    private final PDDocument document;
+    private final DocumentResources resources;
+    private final TextObjectWriter textObjectWriter = new TextObjectWriter();
+    private PDPageContentStream contentStream;
+
+    /**
+     * @param document, the document to add the painted pages to.
+     */
+    PagePainter(final PDDocument document) {
+        this(document, new DocumentResources());
+    }
+
+    /**
+     * @param document, the document to add the painted pages to.
+     * @param resources, the resources that are already embedded in the document, images that aren't embedded yet are embedded and added to it.
+     */
+    PagePainter(final PDDocument document, final DocumentResources resources) {
+        this.document = document;
+        this.resources = resources;
+    }
+
+    /**
+     * Embed the images of the page in the document and collect the characters of its embedded fonts, without painting the page.
+     * Call {@link #embedFonts()} once the resources of all pages are embedded.
+     *
+     * @param layout, the layout of the page.
+     * @throws IOException when an image can't be embedded.
+     */
+    void embedResources(final PageLayout layout) throws IOException {
+        for(final LayoutBox box : layout.getBoxes()){
+            box.embed(this);
+        }
+    }
+
+    /**
+     * Embed the fonts used by the pages of {@link #embedResources(PageLayout)}, as subsets of the used characters.
+     *
+     * @throws IOException when a font can't be embedded.
+     */
+    void embedFonts() throws IOException {
+        resources.embedFonts(document);
+    }
+
+    /**
+     * @return the resources embedded in the document.
+     */
+    DocumentResources getResources() {
+        return resources;
+    }
+
+    /**
+     * Add a page to the document and paint the layout on it.
+     *
+     * @param layout, the layout of the page.
+     * @return the painted page.
+     * @throws IOException when the page can't be painted.
+     */
+    PDPage paint(final PageLayout layout) throws IOException {
+        final PDPage page = new PDPage(layout.createMediaBox());
+        document.addPage(page);
+        try(final PDPageContentStream pageContentStream = new PDPageContentStream(document, page)){
+            paint(layout, pageContentStream);
+        }
+        return page;
+    }
+
+    /**
+     * Paint the layout on the given content stream, the content stream is not closed.
+     *
+     * @param layout, the layout of the page.
+     * @param pageContentStream, the content stream of the page.
+     * @throws IOException when the page can't be painted.
+     */
+    void paint(final PageLayout layout, final PDPageContentStream pageContentStream) throws IOException {
+        contentStream = pageContentStream;
+        for(final LayoutBox box : layout.getBoxes()){
+            box.paint(this);
+        }
+        textObjectWriter.endTextObject();
+    }
+
+    void showText(final String text, final TextFont font, final float fontSize, final float x, final float y) throws IOException {
+        textObjectWriter.showLine(contentStream, text, resources.getFont(font), fontSize, x, y);
+    }
+
+    void useFont(final TextFont font, final String text) {
+        resources.useCharacters(font, text);
+    }
+
+    void drawImage(final ImageKey key, final ImageData image, final float x, final float y, final float width, final float height) throws IOException {
+        textObjectWriter.endTextObject();
+        contentStream.drawXObject(embedImage(key, image), x, y, width, height);
+    }
+
+    PDXObjectImage embedImage(final ImageKey key, final ImageData image) throws IOException {
+        PDXObjectImage ximage = resources.getImage(key);
+        if(ximage == null){
+            ximage = image.createXObject(document);
+            resources.putImage(key, ximage);
+        }
+        return ximage;
+    }
+
+    void strokeLines(final float lineWidth, final float[] lines) throws IOException {
+        textObjectWriter.endTextObject();
+        contentStream.setLineWidth(lineWidth);
+        for(int i = 0; i < lines.length; i += 4){
+            contentStream.addLine(lines[i], lines[i + 1], lines[i + 2], lines[i + 3]);
+        }
+        contentStream.stroke();
+    }
+}
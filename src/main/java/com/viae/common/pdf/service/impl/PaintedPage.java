@@ -0,0 +1,89 @@
+package com.viae.common.pdf.service.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+
+/**
+ * A page that is painted on its own, outside of the document it ends up in: its media box, resources and compressed content.
+ * The streams of a pdfbox document can share one scratch file (see {@link MemoryPolicy}), so the content of a page is painted in a heap document of its own.
+ *
+ * @author Vandeperre Maarten
+ */
+final class PaintedPage {
+    private final PDRectangle mediaBox;
+    private final PDResources resources;
+    private final byte[] content;
+
+    private PaintedPage(final PDRectangle mediaBox, final PDResources resources, final byte[] content) {
+        this.mediaBox = mediaBox;
+        this.resources = resources;
+        this.content = content;
+    }
+
+    /**
+     * @param layout, the layout of the page.
+     * @param resources, the resources that are already embedded in the target document, the page may only contain these images and fonts.
+     * @return the painted page.
+     * @throws IOException when the page can't be painted.
+     */
+    static PaintedPage paint(final PageLayout layout, final DocumentResources resources) throws IOException {
+        try(final PDDocument scratch = new PDDocument()){
+            final PDPage page = new PDPage(layout.createMediaBox());
+            try(final PDPageContentStream contentStream = new PDPageContentStream(scratch, page, false, true)){
+                new PagePainter(scratch, resources).paint(layout, contentStream);
+            }
+            //the compressed content is copied as is, it isn't decoded and compressed again
+            try(final InputStream compressed = page.getContents().getStream().getFilteredStream()){
+                return new PaintedPage(page.findMediaBox(), page.findResources(), IOUtils.toByteArray(compressed));
+            }
+        }
+    }
+
+    /**
+     * Add the page at the end of the document.
+     *
+     * @param document, the document the images and fonts of the page are embedded in.
+     * @throws IOException when the content can't be copied into the document.
+     */
+    void addTo(final PDDocument document) throws IOException {
+        final PDPage page = new PDPage(mediaBox);
+        page.setResources(resources);
+        final PDStream contents = new PDStream(document, new ByteArrayInputStream(content), true);
+        contents.setFilters(Collections.singletonList(COSName.FLATE_DECODE));
+        page.setContents(contents);
+        document.addPage(page);
+    }
+
+    PDRectangle getMediaBox() {
+        return mediaBox;
+    }
+
+    PDResources getResources() {
+        return resources;
+    }
+
+    /**
+     * @return the flate compressed content stream.
+     */
+    byte[] getContent() {
+        return content;
+    }
+
+    /**
+     * Receives the painted pages, in order.
+     */
+    interface Handler {
+        void pagePainted(PaintedPage page) throws IOException;
+    }
+}
@@ -0,0 +1,86 @@
+package com.viae.common.pdf.service.impl;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Paints laid out pages concurrently on a fork join pool.
+ * The images and fonts should be embedded in the target document up front, then every page is painted and compressed into its own content buffer ({@link PaintedPage}),
+ * the painted pages are handed over in order. Only a limited number of pages per thread is painted ahead.
+ *
+ * @author Vandeperre Maarten
+ */
+final class ParallelPagePainter {
+    private static final int PAGES_IN_PROGRESS_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private final DocumentResources resources;
+
+    /**
+     * @param pool, the pool to paint the pages on.
+     * @param resources, the resources that are embedded in the target document, they aren't changed while painting.
+     */
+    ParallelPagePainter(final ForkJoinPool pool, final DocumentResources resources) {
+        this.pool = pool;
+        this.resources = resources;
+    }
+
+    /**
+     * Paint the pages and hand them over in order.
+     *
+     * @param pages, the layouts of the pages.
+     * @param handler, the handler of the painted pages, called on the calling thread.
+     * @throws IOException when a page can't be painted or handled.
+     */
+    void paint(final List<PageLayout> pages, final PaintedPage.Handler handler) throws IOException {
+        final int maxPagesInProgress = pool.getParallelism() * PAGES_IN_PROGRESS_PER_THREAD;
+        final Queue<ForkJoinTask<PaintedPage>> inProgress = new ArrayDeque<>();
+        final Iterator<PageLayout> iterator = pages.iterator();
+        try{
+            while(iterator.hasNext() || !inProgress.isEmpty()){
+                while(iterator.hasNext() && inProgress.size() < maxPagesInProgress){
+                    inProgress.add(pool.submit(new PaintTask(iterator.next())));
+                }
+                handler.pagePainted(get(inProgress.remove()));
+            }
+        } finally {
+            for(final ForkJoinTask<PaintedPage> task : inProgress){
+                task.cancel(true);
+            }
+        }
+    }
+
+    private static PaintedPage get(final ForkJoinTask<PaintedPage> task) throws IOException {
+        try {
+            return task.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (final ExecutionException e) {
+            if(e.getCause() instanceof IOException){
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private final class PaintTask implements Callable<PaintedPage> {
+        private final PageLayout layout;
+
+        private PaintTask(final PageLayout layout) {
+            this.layout = layout;
+        }
+
+        @Override
+        public PaintedPage call() throws IOException {
+            return PaintedPage.paint(layout, resources);
+        }
+    }
+}
@@ -1,42 +1,615 @@
 package com.viae.common.pdf.service.impl;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-
-import javax.imageio.ImageIO;
-
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.pdfbox.exceptions.COSVisitorException;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
-import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
-import org.apache.pdfbox.pdmodel.font.PDFont;
-import org.apache.pdfbox.pdmodel.graphics.xobject.PDJpeg;
-import org.apache.pdfbox.pdmodel.graphics.xobject.PDPixelMap;
-import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectImage;
 
 import com.viae.common.pdf.model.PdfContext;
+import com.viae.common.pdf.model.TextFont;
+import com.viae.common.pdf.service.impl.ImageCache.ImageData;
+import com.viae.common.pdf.service.impl.ImageCache.ImageKey;
+import com.viae.common.pdf.service.impl.LayoutBox.ImageBox;
+import com.viae.common.pdf.service.impl.LayoutBox.PathBox;
+import com.viae.common.pdf.service.impl.LayoutBox.TextBox;
+import com.viae.common.pdf.service.impl.RenderStatistics.Counter;
+import com.viae.common.pdf.service.impl.RenderStatistics.Timer;
 import com.viae.common.pdf.util.TextWrapUtil;
-import com.viae.common.pdf.util.TextWrapUtil.WrapResult;
-
+import com.viae.common.pdf.util.TextWrapUtil.LineBreaks;
+import com.viae.common.utils.validate.Validate;
+
+/**
+ * Builds pdfs in two phases: the write methods lay out the content into positioned boxes per page ({@link DocumentLayout}),
+ * the layout is painted into a document afterwards ({@link #buildPdf(DocumentLayout, PdfOutput)}).
+ * <p>
+ * A builder can be reused for any number of documents, one document at a time:
+ * every layout starts from the default context ({@link #setDefaultContext(PdfContext)}) on an empty first page,
+ * and when it is finished (or when it fails) the state of the document is dropped ({@link #reset()}).
+ * The configuration (caches, paint pool, memory policy, streaming, listener) and the internal buffers are kept,
+ * so pooled builders don't allocate them again for every document.
+ * A builder isn't thread safe, pool builders per thread instead of sharing them:
+ * a layout started while another thread is laying out a document with the same builder fails with an {@link IllegalStateException}.
+ */
 public class PdfBuilder {
+    private static final PdfContext DEFAULT_CONTEXT = PdfContext.builder().create().build();
+    private static final float POINTS_PER_INCH = 72;
 
     protected PdfContext context; //TODO make private and add protected setter
-    protected PDDocument document; //TODO make private and add protected setter
-    protected PDPageContentStream contentStream; //TODO make private and add protected setter
+    private PdfContext defaultContext = DEFAULT_CONTEXT;
+    private final AtomicReference<Thread> layoutThread = new AtomicReference<>();
+    private final AtomicReference<AsyncRender> asyncRender = new AtomicReference<>();
     private float lastY; //TODO make private and add protected setter
+    private ImageCache imageCache;
+    private WrapCache wrapCache;
+    private ImagePrefetcher imagePrefetcher;
+    private float imageDpi;
+    private float imageQuality;
+    private ForkJoinPool paintPool;
+    private MemoryPolicy memoryPolicy = MemoryPolicy.heap();
+    private boolean streaming;
+    private RenderListener renderListener = RenderListener.NONE;
+    private RenderStatistics statistics;
+    private long layoutStart;
+    private final Map<ImageKey, ImageData> documentImages = new HashMap<>();
+    private final List<PageLayout> pages = new ArrayList<>();
+    private final LineBreaks lineBreaks = new LineBreaks();
+    private PdfContext lineMetricsContext;
+    private LineMetrics lineMetrics;
+    private PageLayout currentPage;
 
     public PdfBuilder(){
-        context = PdfContext.builder().create().build();
+        context = DEFAULT_CONTEXT;
     }
 
     public PdfContext getContext() {
         return PdfContext.builder().deepCopy(context).build();
     }
 
+    /**
+     * @param defaultContext, the context every document starts with, a context set while laying out a document only applies until the end of that document.
+     */
+    public void setDefaultContext(final PdfContext defaultContext) {
+        Validate.notNull(defaultContext, "default context should be provided");
+        this.defaultContext = defaultContext;
+        if(!isLayingOut()){
+            context = defaultContext;
+        }
+    }
+
+    /**
+     * @param imageCache, cache to share loaded images with other documents and builders, null to load the images for every document.
+     */
+    public void setImageCache(final ImageCache imageCache) {
+        this.imageCache = imageCache;
+    }
+
+    /**
+     * @param wrapCache, cache to share wrapped texts with other documents and builders, null to wrap every text.
+     */
+    public void setWrapCache(final WrapCache wrapCache) {
+        this.wrapCache = wrapCache;
+    }
+
+    /**
+     * Load the images of a document in the background, ahead of the layout, instead of when the layout reaches them.
+     * Compiled templates request all their images when the layout starts (templates read from a reader aren't known up front, their images aren't prefetched),
+     * java clients request them with {@link JavaPdfBuilder#prefetchImage(File, ImageType)}.
+     *
+     * @param executor, executor to load the images on, null to load every image when the layout reaches it.
+     * @param maxImagesAhead, the maximum number of images that are loaded ahead of the layout, to bound the memory taken by decoded images.
+     */
+    public void setImagePrefetch(final Executor executor, final int maxImagesAhead) {
+        Validate.isTrue(maxImagesAhead > 0, "max images ahead should be positive");
+        if(imagePrefetcher != null){
+            imagePrefetcher.clear();
+        }
+        imagePrefetcher = executor != null ? new ImagePrefetcher(executor, maxImagesAhead) : null;
+    }
+
+    /**
+     * Downsample images that are drawn smaller than their resolution, so a large photo drawn as a thumbnail doesn't embed all its pixels.
+     * The downsampled images are encoded as jpeg, images with transparent pixels are embedded lossless.
+     *
+     * @param targetDpi, the resolution (pixels per inch of the drawn size) to downsample images to, 0 to embed all images at their own resolution.
+     * @param jpegQuality, the quality to encode the downsampled images with, from 0 (smallest) to 1 (best).
+     */
+    public void setImageDownsampling(final float targetDpi, final float jpegQuality) {
+        Validate.isTrue(targetDpi >= 0, "target dpi should not be negative");
+        Validate.isTrue(jpegQuality > 0 && jpegQuality <= 1, "jpeg quality should be between 0 and 1");
+        this.imageDpi = targetDpi;
+        this.imageQuality = jpegQuality;
+    }
+
+    /**
+     * @param paintPool, pool to paint the pages of a document concurrently, null to paint the pages one after the other.
+     */
+    public void setPaintPool(final ForkJoinPool paintPool) {
+        this.paintPool = paintPool;
+    }
+
+    /**
+     * @param memoryPolicy, where the document keeps its stream content while it is being built, e.g. a scratch file for very large documents.
+     */
+    public void setMemoryPolicy(final MemoryPolicy memoryPolicy) {
+        Validate.notNull(memoryPolicy, "memory policy should be provided");
+        this.memoryPolicy = memoryPolicy;
+    }
+
+    /**
+     * @param streaming, true to write the pages to the output as soon as they are painted, instead of saving the whole document at the end.
+     * The time to the first byte is shorter and the painted pages don't stay in memory, the document isn't available as a {@link PDDocument} though.
+     */
+    public void setStreaming(final boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * @param renderListener, listener to report the timings and counters of every rendered document to, {@link RenderListener#NONE} to measure nothing.
+     * The statistics of a layout are only collected when the listener is set before the layout starts.
+     */
+    public void setRenderListener(final RenderListener renderListener) {
+        Validate.notNull(renderListener, "render listener should be provided");
+        this.renderListener = renderListener;
+    }
+
+    /**
+     * Paint a layout into a new document.
+     * The layout isn't changed, so it can be painted multiple times.
+     * When a paint pool is set, the pages are painted concurrently and added to the document in order.
+     * In streaming mode, the pages are written to the output as soon as they are painted.
+     *
+     * @param layout, the layout of the document.
+     * @param output, the output to save the pdf to.
+     * @return the number of bytes written.
+     */
+    public long buildPdf(final DocumentLayout layout, final PdfOutput output){
+        final RenderStatistics documentStatistics = getDocumentStatistics(layout);
+        return documentRendered(layout, documentStatistics, paintPdf(layout, output, documentStatistics));
+    }
+
+    /**
+     * Lay out, paint and save a document without blocking the calling thread.
+     * The layout and the painting are done on the cpu executor, the document is saved on the io executor
+     * (in streaming mode, the pages are painted on the io executor while they are written).
+     * Cancelling the future aborts the layout or painting at the next page, a cancelled document isn't saved.
+     * The builder shouldn't be used for anything else until the future is completed.
+     * A cancelled future is completed immediately, the builder stays busy until the phase in progress stops though (see {@link #whenAsyncRenderStopped()}).
+     *
+     * @param layouter, lays out the document.
+     * @param output, the output to save the pdf to.
+     * @param cpuExecutor, the executor to lay out and paint the document on.
+     * @param ioExecutor, the executor to save the document on.
+     * @return the future result of the document.
+     * @throws IllegalStateException when the builder is still rendering another document asynchronously.
+     */
+    protected CompletableFuture<RenderResult> buildPdfAsync(final Callable<DocumentLayout> layouter, final PdfOutput output, final Executor cpuExecutor, final Executor ioExecutor){
+        Validate.notNull(output, "output should be provided");
+        Validate.notNull(cpuExecutor, "cpu executor should be provided");
+        Validate.notNull(ioExecutor, "io executor should be provided");
+        final AsyncRender render = new AsyncRender(layouter, output, ioExecutor);
+        if(!asyncRender.compareAndSet(null, render)){
+            throw new IllegalStateException("the builder is rendering another document asynchronously");
+        }
+        render.execute(cpuExecutor, new Runnable() {
+            @Override
+            public void run() {
+                render.layout();
+            }
+        });
+        return render.result;
+    }
+
+    /**
+     * The future of an asynchronous rendering completes as soon as it is cancelled, while the layout, painting or saving in progress only stops at its next page.
+     * Wait for this stage before rendering the next document with the builder (e.g. before returning it to a pool).
+     *
+     * @return a stage that completes when the asynchronous rendering in progress has stopped, a completed stage when the builder isn't rendering asynchronously.
+     */
+    public CompletionStage<Void> whenAsyncRenderStopped(){
+        final AsyncRender render = asyncRender.get();
+        return render != null ? render.stopped : CompletableFuture.<Void>completedFuture(null);
+    }
+
+    private RenderStatistics getDocumentStatistics(final DocumentLayout layout){
+        if(renderListener == RenderListener.NONE){
+            return null;
+        }
+        final RenderStatistics layoutStatistics = layout.getStatistics();
+        return layoutStatistics != null ? layoutStatistics.copy() : new RenderStatistics();
+    }
+
+    private long documentRendered(final DocumentLayout layout, final RenderStatistics documentStatistics, final long bytes){
+        if(documentStatistics != null){
+            documentStatistics.increment(Counter.PAGES, layout.getPageCount());
+            documentStatistics.increment(Counter.BYTES_WRITTEN, bytes);
+            renderListener.documentRendered(documentStatistics);
+        }
+        return bytes;
+    }
+
+    private long paintPdf(final DocumentLayout layout, final PdfOutput output, final RenderStatistics documentStatistics){
+        if(streaming){
+            return streamPdf(layout, output, documentStatistics);
+        }
+        try(final PDDocument document = paintDocument(layout, documentStatistics)){
+            return saveDocument(document, output, documentStatistics);
+        } catch(final IOException | COSVisitorException e){
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return the painted document, to be closed by the caller.
+     */
+    private PDDocument paintDocument(final DocumentLayout layout, final RenderStatistics documentStatistics) throws IOException {
+        final PDDocument document = memoryPolicy.createDocument();
+        boolean painted = false;
+        try{
+            final long paintStart = System.nanoTime();
+            if(paintPool != null){
+                new ParallelPagePainter(paintPool, embedResources(document, layout)).paint(layout.getPages(), new PaintedPage.Handler() {
+                    @Override
+                    public void pagePainted(final PaintedPage page) throws IOException {
+                        checkCancelled();
+                        page.addTo(document);
+                    }
+                });
+            } else {
+                final PagePainter painter = new PagePainter(document, embedResources(document, layout));
+                for(final PageLayout page : layout.getPages()){
+                    checkCancelled();
+                    painter.paint(page);
+                }
+            }
+            if(documentStatistics != null){
+                documentStatistics.addTime(Timer.CONTENT_STREAM, paintStart);
+            }
+            painted = true;
+            return document;
+        } finally {
+            if(!painted){
+                document.close();
+            }
+        }
+    }
+
+    private static long saveDocument(final PDDocument document, final PdfOutput output, final RenderStatistics documentStatistics) throws IOException, COSVisitorException {
+        if(documentStatistics == null){
+            return output.write(document);
+        }
+        final long saveStart = System.nanoTime();
+        final long bytes = output.write(document);
+        documentStatistics.addTime(Timer.SAVE, saveStart);
+        return bytes;
+    }
+
+    /**
+     * @throws CancellationException when the asynchronous rendering of the document is cancelled.
+     */
+    private void checkCancelled(){
+        final AsyncRender render = asyncRender.get();
+        if(render != null && render.result.isCancelled()){
+            throw new CancellationException("the rendering of the document is cancelled");
+        }
+    }
+
+    /**
+     * The phases of an asynchronous rendering, every phase is run on the executor of its kind of work and hands over to the next phase.
+     * A failing phase completes the result exceptionally, a cancelled result stops the phase in progress at its next page.
+     * The builder is released when the result is completed by the last phase, or at the latest when the last phase that runs has stopped.
+     */
+    private final class AsyncRender {
+        private final CompletableFuture<RenderResult> result = new CompletableFuture<>();
+        private final CompletableFuture<Void> stopped = new CompletableFuture<>();
+        private final AtomicInteger phases = new AtomicInteger();
+        private final long start = System.nanoTime();
+        private final Callable<DocumentLayout> layouter;
+        private final PdfOutput output;
+        private final Executor ioExecutor;
+
+        private AsyncRender(final Callable<DocumentLayout> layouter, final PdfOutput output, final Executor ioExecutor) {
+            this.layouter = layouter;
+            this.output = output;
+            this.ioExecutor = ioExecutor;
+        }
+
+        /**
+         * @return false when the executor rejected the phase, the result is failed then.
+         */
+        private boolean execute(final Executor executor, final Runnable phase){
+            phases.incrementAndGet();
+            try{
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try{
+                            phase.run();
+                        } catch(final RuntimeException e){
+                            fail(e);
+                        } catch(final Error e){
+                            fail(e);
+                            throw e;
+                        } finally {
+                            phaseStopped();
+                        }
+                    }
+                });
+                return true;
+            } catch(final RejectedExecutionException e){
+                fail(e);
+                phaseStopped();
+                return false;
+            }
+        }
+
+        /**
+         * A phase hands over by submitting the next phase before it stops, the builder is released when no phase is submitted or running anymore.
+         */
+        private void phaseStopped(){
+            if(phases.decrementAndGet() == 0){
+                release();
+            }
+        }
+
+        private void layout(){
+            checkCancelled();
+            final DocumentLayout layout = call(layouter);
+            final RenderStatistics documentStatistics = getDocumentStatistics(layout);
+            if(streaming){
+                execute(ioExecutor, new Runnable() {
+                    @Override
+                    public void run() {
+                        checkCancelled();
+                        complete(layout, documentStatistics, streamPdf(layout, output, documentStatistics));
+                    }
+                });
+                return;
+            }
+            final PDDocument document;
+            try{
+                document = paintDocument(layout, documentStatistics);
+            } catch(final IOException e){
+                throw new RuntimeException(e);
+            }
+            final boolean submitted = execute(ioExecutor, new Runnable() {
+                @Override
+                public void run() {
+                    save(layout, document, documentStatistics);
+                }
+            });
+            if(!submitted){
+                close(document);
+            }
+        }
+
+        private void save(final DocumentLayout layout, final PDDocument document, final RenderStatistics documentStatistics){
+            try(final PDDocument painted = document){
+                checkCancelled();
+                complete(layout, documentStatistics, saveDocument(painted, output, documentStatistics));
+            } catch(final IOException | COSVisitorException e){
+                throw new RuntimeException(e);
+            }
+        }
+
+        private void complete(final DocumentLayout layout, final RenderStatistics documentStatistics, final long bytes){
+            documentRendered(layout, documentStatistics, bytes);
+            release();
+            result.complete(new RenderResult(layout.getPageCount(), bytes, System.nanoTime() - start));
+        }
+
+        private void fail(final Throwable cause){
+            release();
+            result.completeExceptionally(cause);
+        }
+
+        /**
+         * Release the builder before the result is completed, so the builder can be reused as soon as the result is available.
+         * Releasing is idempotent, the phase that completed the result releases the builder again when it stops.
+         */
+        private void release(){
+            asyncRender.compareAndSet(this, null);
+            stopped.complete(null);
+        }
+    }
+
+    private static DocumentLayout call(final Callable<DocumentLayout> layouter){
+        try{
+            return layouter.call();
+        } catch(final RuntimeException e){
+            throw e;
+        } catch(final Exception e){
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void close(final PDDocument document){
+        try{
+            document.close();
+        } catch(final IOException e){
+            throw new RuntimeException(e);
+        }
+    }
+
+    private long streamPdf(final DocumentLayout layout, final PdfOutput output, final RenderStatistics documentStatistics){
+        try{
+            return output.write(new PdfOutput.StreamWriter() {
+                @Override
+                public void writeTo(final OutputStream stream) throws IOException {
+                    //the images and fonts are kept in a document of their own until the pdf is finished
+                    try(final PDDocument resourceDocument = memoryPolicy.createDocument()){
+                        final long paintStart = System.nanoTime();
+                        final DocumentResources resources = embedResources(resourceDocument, layout);
+                        final StreamingPdfWriter writer = new StreamingPdfWriter(stream);
+                        if(paintPool != null){
+                            new ParallelPagePainter(paintPool, resources).paint(layout.getPages(), new PaintedPage.Handler() {
+                                @Override
+                                public void pagePainted(final PaintedPage page) throws IOException {
+                                    checkCancelled();
+                                    writer.pagePainted(page);
+                                }
+                            });
+                        } else {
+                            for(final PageLayout page : layout.getPages()){
+                                checkCancelled();
+                                writer.pagePainted(PaintedPage.paint(page, resources));
+                            }
+                        }
+                        if(documentStatistics == null){
+                            writer.finish();
+                            return;
+                        }
+                        documentStatistics.addTime(Timer.CONTENT_STREAM, paintStart);
+                        final long saveStart = System.nanoTime();
+                        writer.finish();
+                        documentStatistics.addTime(Timer.SAVE, saveStart);
+                    }
+                }
+            });
+        } catch(final IOException e){
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Embed the images and fonts of all pages up front, the fonts are embedded as subsets of the characters used in the whole document.
+     */
+    private static DocumentResources embedResources(final PDDocument document, final DocumentLayout layout) throws IOException {
+        final PagePainter painter = new PagePainter(document);
+        for(final PageLayout page : layout.getPages()){
+            painter.embedResources(page);
+        }
+        painter.embedFonts();
+        return painter.getResources();
+    }
+
+    /**
+     * Start the layout of a new document, with an empty first page.
+     *
+     * @param pageSize, the size of the pages.
+     */
+    protected void startLayout(final PDRectangle pageSize){
+        final Thread thread = Thread.currentThread();
+        if(layoutThread.get() != thread && !layoutThread.compareAndSet(null, thread)){
+            throw new IllegalStateException("the builder is laying out a document on another thread, builders can be reused but not shared between threads");
+        }
+        clearDocument();
+        statistics = renderListener != RenderListener.NONE ? new RenderStatistics() : null;
+        layoutStart = System.nanoTime();
+        initPageStart(pageSize);
+    }
+
+    /**
+     * The builder is reset, so it is ready for the next document.
+     *
+     * @return the layout of all pages since {@link #startLayout(PDRectangle)}, including the current page.
+     */
+    protected DocumentLayout finishLayout(){
+        pages.add(currentPage);
+        if(statistics != null){
+            statistics.addTime(Timer.LAYOUT, layoutStart);
+        }
+        final DocumentLayout layout = new DocumentLayout(pages, statistics);
+        reset();
+        return layout;
+    }
+
+    /**
+     * Drop the document in progress (e.g. after a failed layout) and go back to the default context.
+     * The configuration and the internal buffers are kept, a finished layout resets the builder by itself.
+     *
+     * @throws IllegalStateException when another thread is laying out a document with this builder.
+     */
+    public void reset(){
+        final Thread thread = layoutThread.get();
+        if(thread != null && thread != Thread.currentThread()){
+            throw new IllegalStateException("the builder is laying out a document on another thread, it can only be reset by that thread");
+        }
+        clearDocument();
+        layoutThread.compareAndSet(thread, null);
+    }
+
+    /**
+     * Drop the document in progress and go back to the configuration of a new builder:
+     * the default context, no caches, no image prefetch or downsampling, painting one page after the other on the heap, no streaming and no listener.
+     * Used to hand a pooled builder to the next job without the configuration of the previous job, the internal buffers are kept.
+     *
+     * @throws IllegalStateException when another thread is laying out a document with this builder.
+     */
+    void resetConfiguration(){
+        reset();
+        defaultContext = DEFAULT_CONTEXT;
+        context = DEFAULT_CONTEXT;
+        imageCache = null;
+        wrapCache = null;
+        imagePrefetcher = null;
+        imageDpi = 0;
+        imageQuality = 0;
+        paintPool = null;
+        memoryPolicy = MemoryPolicy.heap();
+        streaming = false;
+        renderListener = RenderListener.NONE;
+    }
+
+    private void clearDocument(){
+        context = defaultContext;
+        lastY = 0;
+        pages.clear();
+        documentImages.clear();
+        currentPage = null;
+        statistics = null;
+        if(imagePrefetcher != null){
+            imagePrefetcher.clear();
+        }
+    }
+
+    /**
+     * @return true when a document is being laid out, on any thread.
+     */
+    protected boolean isLayingOut() {
+        return layoutThread.get() != null;
+    }
+
+    /**
+     * @return true when a document is being laid out on the current thread, false when no document is being laid out.
+     * @throws IllegalStateException when another thread is laying out a document.
+     */
+    protected boolean isLayingOutOnCurrentThread() {
+        final Thread thread = layoutThread.get();
+        if(thread != null && thread != Thread.currentThread()){
+            throw new IllegalStateException("the builder is laying out a document on another thread, builders can be reused but not shared between threads");
+        }
+        return thread != null;
+    }
+
+    /**
+     * @return the statistics of the layout in progress, null when nothing is measured.
+     */
+    RenderStatistics getStatistics() {
+        return statistics;
+    }
+
+    PageLayout getCurrentPage() {
+        return currentPage;
+    }
+
     protected PDRectangle getPageSize(final PageSize pageSize){
         switch (pageSize) {
             default:
@@ -50,137 +623,377 @@ public class PdfBuilder {
     }
 
     protected void writeImage(final PDPage page, final File file, final ImageType type, final float maxWidth) throws IOException {
+        final ImageKey key = new ImageKey(file, type);
+        final ImageData image = getImage(key, file, type);
 
-        PDXObjectImage ximage = null;
-        try(InputStream stream = new FileInputStream( file )){
-            switch (type) {
-                case JPEG:
-                    ximage = new PDJpeg(document, stream);
-                    break;
-                default:
-                    final BufferedImage awtImage = ImageIO.read(stream);
-                    ximage = new PDPixelMap(document, awtImage);
-                    break;
-            }
-        }
-
-        final float imageWidth = ximage.getWidth() * 1f;
-        final float imageHeight = ximage.getHeight() * 1f;
+        final float imageWidth = image.getWidth() * 1f;
+        final float imageHeight = image.getHeight() * 1f;
         final float scale = (imageWidth - maxWidth < 0) ? 1f : (maxWidth/imageWidth);
         final float width = imageWidth * scale;
         final float height = imageHeight * scale;
         final float x = context.getMarginLeft();
         final float y = getPositionY(page.findMediaBox(), height);
 
-        contentStream.drawXObject(ximage, x, y, width, height);
+        final int targetWidth = imageDpi > 0 ? Math.max(1, Math.round(width * imageDpi / POINTS_PER_INCH)) : image.getWidth();
+        if(targetWidth < image.getWidth()){
+            final int targetHeight = Math.max(1, Math.round(imageHeight * targetWidth / imageWidth));
+            final ImageKey downsampledKey = key.downsampled(targetWidth, targetHeight, imageQuality);
+            currentPage.add(new ImageBox(downsampledKey, getDownsampledImage(downsampledKey, image), x, y, width, height));
+        } else {
+            currentPage.add(new ImageBox(key, image, x, y, width, height));
+        }
         lastY = y;
     }
 
+    private ImageData getDownsampledImage(final ImageKey key, final ImageData source) throws IOException {
+        ImageData image = documentImages.get(key);
+        if(image == null){
+            final long start = System.nanoTime();
+            image = imageCache != null ? imageCache.downsample(key, source) : source.downsample(key);
+            documentImages.put(key, image);
+            if(statistics != null){
+                statistics.addTime(Timer.IMAGE_DECODE, start);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Every distinct image is read only once per document (and only once over all documents when an image cache is set).
+     */
+    private ImageData getImage(final ImageKey key, final File file, final ImageType type) throws IOException {
+        ImageData image = documentImages.get(key);
+        if(image == null){
+            final long start = System.nanoTime();
+            image = imagePrefetcher != null ? imagePrefetcher.take(key) : null;
+            if(image == null){
+                image = loadImage(file, type);
+            }
+            documentImages.put(key, image);
+            if(statistics != null){
+                statistics.addTime(Timer.IMAGE_DECODE, start);
+                statistics.increment(Counter.IMAGE_BYTES, image.getSize());
+            }
+        }
+        return image;
+    }
+
+    private ImageData loadImage(final File file, final ImageType type) throws IOException {
+        return imageCache != null ? imageCache.load(file, type) : ImageData.read(file, type);
+    }
+
+    /**
+     * Request an image of the document in progress to be loaded in the background, when an image prefetch executor is set.
+     *
+     * @param file, the image file.
+     * @param type, the image type.
+     */
+    protected void prefetchImage(final File file, final ImageType type){
+        if(imagePrefetcher == null){
+            return;
+        }
+        final ImageKey key = new ImageKey(file, type);
+        if(!documentImages.containsKey(key)){
+            imagePrefetcher.request(key, new Callable<ImageData>() {
+                @Override
+                public ImageData call() throws IOException {
+                    return loadImage(file, type);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return true when images are loaded ahead of the layout.
+     */
+    protected boolean isPrefetchingImages(){
+        return imagePrefetcher != null;
+    }
+
+    protected void writeNewLine(final PDRectangle pageSize) throws IOException{
+        writeText("\n", pageSize, context.getMarginLeft());
+    }
+
+    /**
+     * @deprecated the document isn't used while laying out, use {@link #writeNewLine(PDRectangle)}.
+     */
+    @Deprecated
     protected void writeNewLine(final PDDocument document, final PDRectangle pageSize) throws IOException{
-        writeText("\n", document, pageSize, context.getMarginLeft());
+        writeNewLine(pageSize);
     }
 
+    protected void writeText(final String text, final PDRectangle pageSize) throws IOException{
+        writeText(text, pageSize, context.getMarginLeft());
+    }
+
+    /**
+     * @deprecated the document isn't used while laying out, use {@link #writeText(String, PDRectangle)}.
+     */
+    @Deprecated
     protected void writeText(final String text, final PDDocument document, final PDRectangle pageSize) throws IOException{
-        writeText(text, document, pageSize, context.getMarginLeft());
+        writeText(text, pageSize);
     }
 
-    private void writeText(final String text, final PDDocument document, final PDRectangle pageSize, final float textX) throws IOException{
+    private void writeText(final String text, final PDRectangle pageSize, final float textX) throws IOException{
         final float maxLineWidth = pageSize.getWidth() - context.getMarginLeft() - context.getMarginRight();
-        final WrapResult<List<String>> textWrapResult = TextWrapUtil.wrapText(text, context.getFontFamily(), context.getFontSize(), maxLineWidth);
+        lineBreaks.clear();
+        addLineBreaks(text, context.getFontFamily(), context.getFontSize(), maxLineWidth);
+
+        for(int line = 0; line < lineBreaks.getLineCount(0); line++){
+            writeString(text.substring(lineBreaks.getLineStart(0, line), lineBreaks.getLineEnd(0, line)),
+                    context.getFontFamily(), context.getFontSize(), textX, getPositionY(pageSize, getLineHeight()));
+        }
+    }
 
-        for(final String textLine : textWrapResult.getWrapResult()){
-            writeString(textLine, context.getFontFamily().getFontFamily(), context.getFontSize(), textX, getPositionY(pageSize, getLineHeight()));
+    /**
+     * Wrap the text and add its line breaks as the next cell of {@link #lineBreaks}.
+     */
+    private void addLineBreaks(final String text, final TextFont fontFamily, final float fontSize, final float maxLineWidth) {
+        if(statistics == null){
+            wrap(text, fontFamily, fontSize, maxLineWidth);
+            return;
         }
+        final long start = System.nanoTime();
+        wrap(text, fontFamily, fontSize, maxLineWidth);
+        statistics.addTime(Timer.WRAP, start);
+    }
 
+    private void wrap(final String text, final TextFont fontFamily, final float fontSize, final float maxLineWidth) {
+        if(wrapCache != null){
+            lineBreaks.addCell(wrapCache.getLineEnds(text, fontFamily, fontSize, maxLineWidth));
+        } else {
+            TextWrapUtil.wrapCell(text, fontFamily, fontSize, maxLineWidth, lineBreaks);
+        }
     }
 
-    private void writeString(final String string, final PDFont font, final float size, final float marginLeft, final float positionY) throws IOException {
-        contentStream.beginText();
-        contentStream.setFont(font, size);
-        contentStream.moveTextPositionByAmount(marginLeft, positionY);
-        contentStream.drawString(string);
-        contentStream.endText();
+    private void writeString(final String string, final TextFont font, final float size, final float marginLeft, final float positionY) {
+        currentPage.add(new TextBox(string, font, size, marginLeft, positionY));
+        if(statistics != null){
+            statistics.increment(Counter.LINES, 1);
+        }
         lastY = positionY - getLineHeight();
     }
 
     protected float getPositionY(final PDRectangle pageSize, final float contentHeight) throws IOException{
         final float positionY = lastY - contentHeight;
-        if(positionY < context.getMarginBottom()){ //NEW PAGE
-            final PDPage pageTemp = new PDPage(pageSize);
-            document.addPage(pageTemp);
-            contentStream.close();
-            contentStream = new PDPageContentStream(document, pageTemp);
-            initPageStart(pageSize);
+        if(positionY < context.getMarginBottom()){
+            addPage(pageSize);
         }
         return lastY - contentHeight;
     }
 
+    private void addPage(final PDRectangle pageSize) {
+        checkCancelled();
+        pages.add(currentPage);
+        initPageStart(pageSize);
+    }
+
+    /**
+     * Start laying out a new (empty) page.
+     *
+     * @param pageSize, the size of the page.
+     */
     protected void initPageStart(final PDRectangle pageSize){
         lastY = pageSize.getHeight() - context.getMarginTop();
+        currentPage = new PageLayout(pageSize);
     }
 
-    private float getLineHeight() {
-        final float charHeight = context.getFontFamily().getFontFamily().getFontDescriptor().getFontBoundingBox().getHeight();
-        final float tempLineHeight = charHeight / 1000 * context.getFontSize() * context.getFontFamily().getErrorMarginY() + context.getTextLinePadding();
-        final float currentLineHeight = context.getLineHeight() > 0 ? context.getLineHeight() : tempLineHeight;
-        return currentLineHeight;
+    /**
+     * The line height is only computed again when the context is replaced by a context with other font metrics (e.g. by a 'conf|' line),
+     * contexts are immutable, so an unchanged context is recognized by its identity.
+     */
+    protected float getLineHeight() {
+        if(context != lineMetricsContext){
+            if(lineMetrics == null || !lineMetrics.matches(context)){
+                lineMetrics = new LineMetrics(context);
+            }
+            lineMetricsContext = context;
+        }
+        return lineMetrics.lineHeight;
     }
 
     /**
-     * @param page
-     * @param y the y-coordinate of the first row
-     * @param content a 2d array containing the table data
-     * @throws IOException
+     * The metrics of a line of text for a font family, font size, line padding and line height.
+     */
+    private static final class LineMetrics {
+        private final TextFont fontFamily;
+        private final float fontSize;
+        private final float textLinePadding;
+        private final float fixedLineHeight;
+        private final float lineHeight;
+
+        private LineMetrics(final PdfContext context) {
+            this.fontFamily = context.getFontFamily();
+            this.fontSize = context.getFontSize();
+            this.textLinePadding = context.getTextLinePadding();
+            this.fixedLineHeight = context.getLineHeight();
+            final float charHeight = fontFamily.getBoundingBoxHeight();
+            final float tempLineHeight = charHeight / 1000 * fontSize * fontFamily.getErrorMarginY() + textLinePadding;
+            this.lineHeight = fixedLineHeight > 0 ? fixedLineHeight : tempLineHeight;
+        }
+
+        private boolean matches(final PdfContext context) {
+            return fontFamily == context.getFontFamily() && fontSize == context.getFontSize()
+                    && textLinePadding == context.getTextLinePadding() && fixedLineHeight == context.getLineHeight();
+        }
+    }
+
+    /**
+     * Write a table, every row is as high as the cell with the most wrapped lines.
+     * The column geometry is computed and all cells are wrapped once for the whole table (into one flat array of line breaks) before anything is drawn,
+     * the borders are added as a single path per page.
+     * A row that doesn't fit on the current page is moved to the next page,
+     * a row that doesn't even fit on an empty page is split over multiple pages.
+     *
+     * @param page, the current page.
+     * @param content, the rows of the table, every row should have the same number of columns.
+     * @throws IOException when the table can't be written.
      **/
     protected void writeTable(final PDPage page, final String[][] content) throws IOException {
-        final int rows = content.length;
-        if(rows > 1){
-            throw new UnsupportedOperationException("Multi row is currently not supported");
-        }
+        Validate.isTrue(content.length > 0, "a table should have at least one row");
         final int cols = content[0].length;
+        if(statistics != null){
+            statistics.increment(Counter.TABLE_ROWS, content.length);
+        }
+        final PDRectangle pageSize = page.findMediaBox();
+        final TextFont fontFamily = context.getFontFamily();
+        final float fontSize = context.getFontSize();
 
         final float colWidth = getColumnWidth(page, cols);
-        final float tableWidth = colWidth * cols;
         final float colContentWidth = (colWidth - context.getCellMarginLeft() - context.getCellMarginRight());
-        final WrapResult<List<List<String>>> wrapResult = TextWrapUtil.wrapText(content[0], context.getFontFamily(), context.getFontSize(), colContentWidth);
+        final int[] lineCounts = new int[content.length];
+        lineBreaks.clear();
+        for(int i = 0; i < content.length; i++){
+            Validate.isTrue(content[i].length == cols, "every row of a table should have the same number of columns");
+            for(int j = 0; j < cols; j++){
+                addLineBreaks(content[i][j], fontFamily, fontSize, colContentWidth);
+                lineCounts[i] = Math.max(lineCounts[i], lineBreaks.getLineCount(i * cols + j));
+            }
+        }
 
-        final float rowHeight = (getLineHeight() * wrapResult.getMaxNumberOfLines() * 2) + 2 * context.getBorderWidth() + context.getCellMarginTop() + context.getCellMarginBottom();
-        final float tableHeight = rowHeight;
-        getPositionY(page.findMediaBox(), rowHeight);
+        final TableGeometry geometry = new TableGeometry(pageSize, colWidth, cols);
+        for(int i = 0; i < content.length; i++){
+            int firstLine = 0;
+            while(true){
+                final int remainingLines = lineCounts[i] - firstLine;
+                final int fittingLines = geometry.getFittingLines(lastY);
+                if(remainingLines > fittingLines && !geometry.isPageEmpty(lastY)
+                        && (remainingLines <= geometry.getFittingLines(geometry.pageTop) || fittingLines < 1)){
+                    geometry.addBorders();
+                    addPage(pageSize);
+                    continue;
+                }
+                //on an empty page at least one line is written, even when it doesn't fit
+                final int lines = Math.min(remainingLines, Math.max(fittingLines, 1));
+                writeTableRowSegment(geometry, content[i], i * cols, firstLine, lines);
+                firstLine += lines;
+                if(firstLine >= lineCounts[i]){
+                    break;
+                }
+                geometry.addBorders();
+                addPage(pageSize);
+            }
+        }
+        geometry.addBorders();
+    }
 
-        final float y = lastY;
-        //draw the rows
-        float nexty = y;
-        for (int i = 0; i <= rows; i++) {
-            contentStream.setLineWidth(context.getBorderWidth());
-            contentStream.drawLine(context.getMarginLeft(),nexty,context.getMarginLeft()+tableWidth,nexty);
-            nexty-= rowHeight;
+    /**
+     * @param firstCell, the index of the first cell of the row in {@link #lineBreaks}.
+     */
+    private void writeTableRowSegment(final TableGeometry geometry, final String[] row, final int firstCell, final int firstLine, final int lines) {
+        final float top = lastY;
+        final float bottom = top - geometry.getRowHeight(lines);
+        final TextFont font = context.getFontFamily();
+        float textx = context.getMarginLeft() + context.getCellMarginLeft();
+        for(int j = 0; j < row.length; j++){
+            float positionY = top - context.getCellMarginTop() - geometry.lineHeight;
+            final int cell = firstCell + j;
+            final int lastLine = Math.min(firstLine + lines, lineBreaks.getLineCount(cell));
+            for(int line = firstLine; line < lastLine; line++){
+                writeString(row[j].substring(lineBreaks.getLineStart(cell, line), lineBreaks.getLineEnd(cell, line)), font, context.getFontSize(), textx, positionY);
+                positionY = positionY - geometry.lineHeight - geometry.lineHeight;
+            }
+            textx += geometry.colWidth;
         }
+        geometry.addRow(top, bottom);
+        lastY = bottom;
+    }
 
-        //draw the columns
-        float nextx = context.getMarginLeft();
-        for (int i = 0; i <= cols; i++) {
-            contentStream.drawLine(nextx,y,nextx,y-rowHeight);
-            nextx += colWidth;
+    /**
+     * The geometry of a table, computed once per table, and the border lines of the rows on the current page.
+     */
+    private final class TableGeometry {
+        private final float pageTop;
+        private final float colWidth;
+        private final int cols;
+        private final float lineHeight;
+        private final float cellPadding;
+        private float[] rowLines = new float[16];
+        private int rowLineCount;
+
+        private TableGeometry(final PDRectangle pageSize, final float colWidth, final int cols) {
+            this.pageTop = pageSize.getHeight() - context.getMarginTop();
+            this.colWidth = colWidth;
+            this.cols = cols;
+            this.lineHeight = getLineHeight();
+            this.cellPadding = 2 * context.getBorderWidth() + context.getCellMarginTop() + context.getCellMarginBottom();
         }
 
-        //now add the text
-        lastY -= context.getCellMarginTop();
-        final float temp = lastY;
-        float textx = context.getMarginLeft();
-        //lastY -= context.getCellMarginTop();
-        for(int i = 0; i < content.length; i++){
-            for(int j = 0 ; j < content[i].length; j++){
-                for(final String text: wrapResult.getWrapResult().get(j)){
-                    writeText(text, document, page.findMediaBox(), textx + context.getCellMarginLeft());
-                }
-                lastY = temp;
-                textx += colWidth;
+        /**
+         * Every wrapped line of a cell takes two line heights.
+         */
+        private float getRowHeight(final int lines) {
+            return lineHeight * lines * 2 + cellPadding;
+        }
+
+        private int getFittingLines(final float top) {
+            return (int) Math.floor((top - context.getMarginBottom() - cellPadding) / (lineHeight * 2));
+        }
+
+        private boolean isPageEmpty(final float top) {
+            return top >= pageTop;
+        }
+
+        private void addRow(final float top, final float bottom) {
+            if(rowLineCount + 2 > rowLines.length){
+                rowLines = Arrays.copyOf(rowLines, rowLines.length * 2);
+            }
+            if(rowLineCount == 0){
+                rowLines[rowLineCount++] = top;
             }
-            textx = context.getMarginLeft();
+            rowLines[rowLineCount++] = bottom;
         }
 
-        lastY = temp - tableHeight + context.getCellMarginTop();
+        /**
+         * Add the borders of the rows on the current page as one path.
+         */
+        private void addBorders() {
+            if(rowLineCount == 0){
+                return;
+            }
+            final float left = context.getMarginLeft();
+            final float right = left + colWidth * cols;
+            final float top = rowLines[0];
+            final float bottom = rowLines[rowLineCount - 1];
+            final float[] lines = new float[(rowLineCount + cols + 1) * 4];
+            int index = 0;
+            for(int i = 0; i < rowLineCount; i++){
+                lines[index++] = left;
+                lines[index++] = rowLines[i];
+                lines[index++] = right;
+                lines[index++] = rowLines[i];
+            }
+            float nextx = left;
+            for(int i = 0; i <= cols; i++){
+                lines[index++] = nextx;
+                lines[index++] = top;
+                lines[index++] = nextx;
+                lines[index++] = bottom;
+                nextx += colWidth;
+            }
+            currentPage.add(new PathBox(context.getBorderWidth(), lines));
+            rowLineCount = 0;
+        }
     }
 
     protected float getColumnWidth(final PDPage page, final int cols) {
@@ -0,0 +1,147 @@
+package com.viae.common.pdf.service.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import org.apache.pdfbox.exceptions.COSVisitorException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * Target to save a rendered pdf to.
+ * Streams and channels provided by the caller are flushed, but not closed.
+ *
+ * @author Vandeperre Maarten
+ */
+public abstract class PdfOutput {
+    private static final int BUFFER_SIZE = 8192;
+
+    private PdfOutput() {
+    }
+
+    /**
+     * Save the document to this output.
+     *
+     * @param document, the rendered document.
+     * @return the number of bytes written.
+     * @throws IOException when the document can't be written.
+     * @throws COSVisitorException when the document can't be serialized.
+     */
+    public abstract long write(PDDocument document) throws IOException, COSVisitorException;
+
+    /**
+     * Write a pdf that is serialized while it is rendered, see {@link PdfBuilder#setStreaming(boolean)}.
+     *
+     * @param writer, the writer serializing the pdf.
+     * @return the number of bytes written.
+     * @throws IOException when the pdf can't be written.
+     */
+    abstract long write(StreamWriter writer) throws IOException;
+
+    /**
+     * @param path, the path of the file to save the pdf to, the file is only created once the pdf is rendered (or when streaming starts).
+     * @return an output writing to the given file.
+     */
+    public static PdfOutput toFile(final String path) {
+        return new PdfOutput() {
+            @Override
+            public long write(final PDDocument document) throws IOException, COSVisitorException {
+                try(final OutputStream stream = new FileOutputStream(path)){
+                    return save(document, stream);
+                }
+            }
+
+            @Override
+            long write(final StreamWriter writer) throws IOException {
+                try(final OutputStream stream = new FileOutputStream(path)){
+                    return stream(writer, stream);
+                }
+            }
+        };
+    }
+
+    /**
+     * @param stream, the stream to write the pdf to (e.g. a http response).
+     * @return an output writing to the given stream.
+     */
+    public static PdfOutput toStream(final OutputStream stream) {
+        return new PdfOutput() {
+            @Override
+            public long write(final PDDocument document) throws IOException, COSVisitorException {
+                return save(document, stream);
+            }
+
+            @Override
+            long write(final StreamWriter writer) throws IOException {
+                return stream(writer, stream);
+            }
+        };
+    }
+
+    /**
+     * @param channel, the channel to write the pdf to.
+     * @return an output writing to the given channel.
+     */
+    public static PdfOutput toChannel(final WritableByteChannel channel) {
+        return toStream(Channels.newOutputStream(channel));
+    }
+
+    private static long save(final PDDocument document, final OutputStream stream) throws IOException, COSVisitorException {
+        final CountingOutputStream counter = new CountingOutputStream(stream);
+        final OutputStream buffer = new BufferedOutputStream(counter, BUFFER_SIZE);
+        document.save(buffer);
+        buffer.flush();
+        return counter.count;
+    }
+
+    private static long stream(final StreamWriter writer, final OutputStream stream) throws IOException {
+        final CountingOutputStream counter = new CountingOutputStream(stream);
+        final OutputStream buffer = new BufferedOutputStream(counter, BUFFER_SIZE);
+        writer.writeTo(buffer);
+        buffer.flush();
+        return counter.count;
+    }
+
+    /**
+     * Serializes a pdf to a stream while it is rendered.
+     */
+    interface StreamWriter {
+        /**
+         * @param stream, the stream to write the pdf to, the stream shouldn't be closed.
+         * @throws IOException when the pdf can't be written.
+         */
+        void writeTo(OutputStream stream) throws IOException;
+    }
+
+    /**
+     * Counts the written bytes and keeps the target stream open when pdfbox closes the stream after saving.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(final OutputStream stream) {
+            super(stream);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
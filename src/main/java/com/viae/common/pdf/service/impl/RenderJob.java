@@ -0,0 +1,94 @@
+package com.viae.common.pdf.service.impl;
+
+import com.viae.common.pdf.service.impl.PdfBuilder.PageSize;
+
+/**
+ * A single document to render in a batch: what to render and where to write it to.
+ *
+ * @author Vandeperre Maarten
+ */
+public abstract class RenderJob {
+    private final String id;
+    private final PageSize pageSize;
+    private final PdfOutput output;
+
+    RenderJob(final String id, final PageSize pageSize, final PdfOutput output) {
+        this.id = id;
+        this.pageSize = pageSize;
+        this.output = output;
+    }
+
+    /**
+     * @param id, identifies the job in the batch result.
+     * @param template, the compiled template to render.
+     * @param pageSize, the page size of the pdf.
+     * @param output, the output to save the pdf to.
+     * @return the job.
+     */
+    public static RenderJob of(final String id, final CompiledTemplate template, final PageSize pageSize, final PdfOutput output) {
+        return of(id, template, null, pageSize, output);
+    }
+
+    /**
+     * @param id, identifies the job in the batch result.
+     * @param template, the compiled template to render, e.g. one template shared by all jobs of the batch.
+     * @param data, the data of this document to render the template with: a map or a bean, null to render the template as written.
+     * @param pageSize, the page size of the pdf.
+     * @param output, the output to save the pdf to.
+     * @return the job.
+     */
+    public static RenderJob of(final String id, final CompiledTemplate template, final Object data, final PageSize pageSize, final PdfOutput output) {
+        return new RenderJob(id, pageSize, output) {
+            @Override
+            long render(final BuilderPool builders) {
+                final StringPdfBuilder builder = builders.takeStringPdfBuilder();
+                try{
+                    return builder.buildPdf(template, data, getPageSize(), getOutput());
+                } finally {
+                    builders.release(builder);
+                }
+            }
+        };
+    }
+
+    /**
+     * @param id, identifies the job in the batch result.
+     * @param client, the client writing the pdf content.
+     * @param pageSize, the page size of the pdf.
+     * @param output, the output to save the pdf to.
+     * @return the job.
+     */
+    public static RenderJob of(final String id, final JavaPdfBuilder.BuilderClient client, final PageSize pageSize, final PdfOutput output) {
+        return new RenderJob(id, pageSize, output) {
+            @Override
+            long render(final BuilderPool builders) {
+                final JavaPdfBuilder builder = builders.takeJavaPdfBuilder();
+                try{
+                    return builder.buildPdf(client, getPageSize(), getOutput());
+                } finally {
+                    builders.release(builder);
+                }
+            }
+        };
+    }
+
+    /**
+     * Render the document on a builder of the pool, the builder is used by no other job until the document is rendered.
+     *
+     * @param builders, the builders of the batch.
+     * @return the number of bytes written.
+     */
+    abstract long render(BuilderPool builders);
+
+    public String getId() {
+        return id;
+    }
+
+    PageSize getPageSize() {
+        return pageSize;
+    }
+
+    PdfOutput getOutput() {
+        return output;
+    }
+}
@@ -0,0 +1,25 @@
+package com.viae.common.pdf.service.impl;
+
+/**
+ * Receives the statistics of every rendered document, e.g. to report them to a metrics registry or a tracer
+ * (see {@link PdfBuilder#setRenderListener(RenderListener)}).
+ * The listener is called on the thread that built the document, once the pdf is completely written.
+ *
+ * @author Vandeperre Maarten
+ */
+public interface RenderListener {
+
+    /**
+     * The default listener, nothing is measured when it is set.
+     */
+    RenderListener NONE = new RenderListener() {
+        @Override
+        public void documentRendered(final RenderStatistics statistics) {
+        }
+    };
+
+    /**
+     * @param statistics, the timings and counters of the rendered document.
+     */
+    void documentRendered(RenderStatistics statistics);
+}
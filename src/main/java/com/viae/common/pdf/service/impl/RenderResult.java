@@ -0,0 +1,47 @@
+package com.viae.common.pdf.service.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result of a document that is rendered asynchronously.
+ *
+ * @author Vandeperre Maarten
+ */
+public final class RenderResult {
+    private final int pageCount;
+    private final long bytesWritten;
+    private final long elapsedNanos;
+
+    RenderResult(final int pageCount, final long bytesWritten, final long elapsedNanos) {
+        this.pageCount = pageCount;
+        this.bytesWritten = bytesWritten;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the number of pages of the document.
+     */
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * @return the number of bytes written to the output.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @param unit, the time unit of the result.
+     * @return the wall clock time from the request to render the document until it was saved, including the time waiting for the executors.
+     */
+    public long getElapsedTime(final TimeUnit unit) {
+        return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "RenderResult [pageCount=" + pageCount + ", bytesWritten=" + bytesWritten + ", elapsedNanos=" + elapsedNanos + "]";
+    }
+}
@@ -0,0 +1,102 @@
+package com.viae.common.pdf.service.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The timings and counters of a single rendered document.
+ * The layout timer covers the whole layout phase, so it includes the parse, wrap and image decode timers of the same document.
+ * In streaming mode, the pages are written while they are painted, the save timer then only covers the page tree and the cross reference table.
+ *
+ * @author Vandeperre Maarten
+ */
+public final class RenderStatistics {
+    private final long[] nanos = new long[Timer.values().length];
+    private final long[] counts = new long[Counter.values().length];
+
+    RenderStatistics() {
+    }
+
+    /**
+     * @param timer, the phase of the rendering.
+     * @return the time spent in the given phase, in nanoseconds.
+     */
+    public long getNanos(final Timer timer) {
+        return nanos[timer.ordinal()];
+    }
+
+    /**
+     * @param timer, the phase of the rendering.
+     * @param unit, the unit to return the time in.
+     * @return the time spent in the given phase, in the given unit.
+     */
+    public long getTime(final Timer timer, final TimeUnit unit) {
+        return unit.convert(getNanos(timer), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param counter, what to count.
+     * @return the count for the document.
+     */
+    public long getCount(final Counter counter) {
+        return counts[counter.ordinal()];
+    }
+
+    void addTime(final Timer timer, final long start) {
+        nanos[timer.ordinal()] += System.nanoTime() - start;
+    }
+
+    void increment(final Counter counter, final long amount) {
+        counts[counter.ordinal()] += amount;
+    }
+
+    /**
+     * @return a copy, to add the painting of a layout to without changing the statistics of the layout itself.
+     */
+    RenderStatistics copy() {
+        final RenderStatistics copy = new RenderStatistics();
+        System.arraycopy(nanos, 0, copy.nanos, 0, nanos.length);
+        System.arraycopy(counts, 0, copy.counts, 0, counts.length);
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("RenderStatistics[");
+        for(final Timer timer : Timer.values()){
+            builder.append(timer.name().toLowerCase()).append('=').append(getTime(timer, TimeUnit.MICROSECONDS)).append("us, ");
+        }
+        for(final Counter counter : Counter.values()){
+            builder.append(counter.name().toLowerCase()).append('=').append(getCount(counter)).append(", ");
+        }
+        builder.setLength(builder.length() - 2);
+        return builder.append(']').toString();
+    }
+
+    public static enum Timer {
+        /** reading and parsing the template lines (only for templates that aren't compiled up front) */
+        PARSE,
+        /** wrapping the texts and table cells into lines */
+        WRAP,
+        /** laying out the whole document into pages */
+        LAYOUT,
+        /** reading, decoding and downsampling the images (waiting for them when they are prefetched) */
+        IMAGE_DECODE,
+        /** painting the content streams of the pages */
+        CONTENT_STREAM,
+        /** serializing the document to the output */
+        SAVE
+    }
+
+    public static enum Counter {
+        /** the number of pages */
+        PAGES,
+        /** the number of laid out text lines, including the lines in table cells */
+        LINES,
+        /** the number of table rows */
+        TABLE_ROWS,
+        /** the size of the decoded images, every image is counted once per document */
+        IMAGE_BYTES,
+        /** the number of bytes written to the output */
+        BYTES_WRITTEN
+    }
+}
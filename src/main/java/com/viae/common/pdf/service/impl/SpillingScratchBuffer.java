@@ -0,0 +1,126 @@
+package com.viae.common.pdf.service.impl;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.pdfbox.io.RandomAccessBuffer;
+import org.apache.pdfbox.io.RandomAccessFile;
+
+/**
+ * Scratch buffer of a document that is kept in heap until it exceeds its max heap size,
+ * from then on the content is moved to a temporary file, which is deleted when the buffer is closed.
+ * Pdfbox gives every stream a clone of a heap scratch buffer, this buffer is shared by all streams of the document instead.
+ *
+ * @author Vandeperre Maarten
+ */
+final class SpillingScratchBuffer extends RandomAccessBuffer {
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    private final long maxHeapSize;
+    private final File directory;
+    private File file;
+    private RandomAccessFile spilled;
+
+    /**
+     * @param maxHeapSize, the number of bytes that may be kept in heap.
+     * @param directory, the directory to create the temporary file in.
+     */
+    SpillingScratchBuffer(final long maxHeapSize, final File directory) {
+        this.maxHeapSize = maxHeapSize;
+        this.directory = directory;
+    }
+
+    /**
+     * @return true when the content is moved to a temporary file.
+     */
+    boolean isSpilled() {
+        return spilled != null;
+    }
+
+    @Override
+    public SpillingScratchBuffer clone() {
+        return this;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        spillWhenExceeding(1);
+        if(spilled != null){
+            spilled.write(b);
+        } else {
+            super.write(b);
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, final int offset, final int length) throws IOException {
+        spillWhenExceeding(length);
+        if(spilled != null){
+            spilled.write(b, offset, length);
+        } else {
+            super.write(b, offset, length);
+        }
+    }
+
+    private void spillWhenExceeding(final int length) throws IOException {
+        if(spilled != null || Math.max(super.getPosition() + length, super.length()) <= maxHeapSize){
+            return;
+        }
+        final long position = super.getPosition();
+        file = File.createTempFile("pdf-scratch-", ".tmp", directory);
+        final RandomAccessFile target = new RandomAccessFile(file, "rw");
+        final byte[] copyBuffer = new byte[COPY_BUFFER_SIZE];
+        super.seek(0);
+        int read;
+        while((read = super.read(copyBuffer, 0, copyBuffer.length)) > 0){
+            target.write(copyBuffer, 0, read);
+        }
+        target.seek(position);
+        super.close();
+        spilled = target;
+    }
+
+    @Override
+    public long getPosition() throws IOException {
+        return spilled != null ? spilled.getPosition() : super.getPosition();
+    }
+
+    @Override
+    public void seek(final long position) throws IOException {
+        if(spilled != null){
+            spilled.seek(position);
+        } else {
+            super.seek(position);
+        }
+    }
+
+    @Override
+    public long length() throws IOException {
+        return spilled != null ? spilled.length() : super.length();
+    }
+
+    @Override
+    public int read() throws IOException {
+        return spilled != null ? spilled.read() : super.read();
+    }
+
+    @Override
+    public int read(final byte[] b, final int offset, final int length) throws IOException {
+        return spilled != null ? spilled.read(b, offset, length) : super.read(b, offset, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(spilled == null){
+            super.close();
+            return;
+        }
+        try{
+            spilled.close();
+        } finally {
+            if(!file.delete()){
+                file.deleteOnExit();
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.viae.common.pdf.service.impl;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNull;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.io.IOUtils;
+
+/**
+ * Writes a pdf page by page: the objects of a page (content stream, page dictionary and the fonts and images it uses for the first time)
+ * are written as soon as the page is painted, only the page tree, catalog, cross reference table and trailer are written at the end.
+ * Fonts and images that are used on multiple pages are written once.
+ *
+ * @author Vandeperre Maarten
+ */
+final class StreamingPdfWriter implements PaintedPage.Handler {
+    private static final byte[] HEADER = "%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final int CATALOG = 1;
+    private static final int PAGES = 2;
+
+    private final CountingOutputStream out;
+    private final List<Long> offsets = new ArrayList<>();
+    private final Map<COSBase, Integer> objectNumbers = new IdentityHashMap<>();
+    private final Queue<COSBase> pendingObjects = new ArrayDeque<>();
+    private final List<Integer> pages = new ArrayList<>();
+
+    /**
+     * @param stream, the stream to write the pdf to, the stream isn't flushed or closed.
+     * @throws IOException when the header can't be written.
+     */
+    StreamingPdfWriter(final OutputStream stream) throws IOException {
+        this.out = new CountingOutputStream(stream);
+        out.write(HEADER);
+        reserveObject();
+        reserveObject();
+    }
+
+    @Override
+    public void pagePainted(final PaintedPage page) throws IOException {
+        final int contents = reserveObject();
+        startObject(contents);
+        write("<< /Length " + page.getContent().length + " /Filter /FlateDecode >>\nstream\n");
+        out.write(page.getContent());
+        write("\nendstream");
+        endObject();
+
+        final int number = reserveObject();
+        startObject(number);
+        write("<< /Type /Page /Parent " + PAGES + " 0 R /MediaBox ");
+        writeDirect(page.getMediaBox().getCOSArray());
+        write(" /Resources ");
+        writeDictionary(page.getResources().getCOSDictionary(), false);
+        write(" /Contents " + contents + " 0 R >>");
+        endObject();
+        pages.add(number);
+
+        writePendingObjects();
+    }
+
+    /**
+     * Write the page tree, catalog, cross reference table and trailer.
+     *
+     * @throws IOException when the pdf can't be written.
+     */
+    void finish() throws IOException {
+        startObject(PAGES);
+        write("<< /Type /Pages /Kids [");
+        for(final Integer page : pages){
+            write(" " + page + " 0 R");
+        }
+        write(" ] /Count " + pages.size() + " >>");
+        endObject();
+
+        startObject(CATALOG);
+        write("<< /Type /Catalog /Pages " + PAGES + " 0 R >>");
+        endObject();
+
+        final long xref = out.count;
+        write("xref\n0 " + (offsets.size() + 1) + "\n0000000000 65535 f \n");
+        for(final Long offset : offsets){
+            write(String.format("%010d 00000 n \n", offset));
+        }
+        write("trailer\n<< /Size " + (offsets.size() + 1) + " /Root " + CATALOG + " 0 R >>\nstartxref\n" + xref + "\n%%EOF\n");
+    }
+
+    private int reserveObject() {
+        offsets.add(null);
+        return offsets.size();
+    }
+
+    private void startObject(final int number) throws IOException {
+        offsets.set(number - 1, out.count);
+        write(number + " 0 obj\n");
+    }
+
+    private void endObject() throws IOException {
+        write("\nendobj\n");
+    }
+
+    private void writePendingObjects() throws IOException {
+        while(!pendingObjects.isEmpty()){
+            final COSBase object = pendingObjects.remove();
+            startObject(objectNumbers.get(object));
+            if(object instanceof COSStream){
+                writeStream((COSStream) object);
+            } else if(object instanceof COSDictionary){
+                writeDictionary((COSDictionary) object, false);
+            } else {
+                writeDirect(object);
+            }
+            endObject();
+        }
+    }
+
+    private void writeStream(final COSStream stream) throws IOException {
+        final byte[] data;
+        try(final InputStream filtered = stream.getFilteredStream()){
+            data = IOUtils.toByteArray(filtered);
+        }
+        write("<<");
+        for(final Map.Entry<COSName, COSBase> entry : stream.entrySet()){
+            if(!COSName.LENGTH.equals(entry.getKey())){
+                writeEntry(entry.getKey(), entry.getValue(), false);
+            }
+        }
+        write(" /Length " + data.length + " >>\nstream\n");
+        out.write(data);
+        write("\nendstream");
+    }
+
+    /**
+     * @param indirectValues, true to write the values as references, e.g. the fonts and images of a resources dictionary, to write them once.
+     */
+    private void writeDictionary(final COSDictionary dictionary, final boolean indirectValues) throws IOException {
+        write("<<");
+        for(final Map.Entry<COSName, COSBase> entry : dictionary.entrySet()){
+            writeEntry(entry.getKey(), entry.getValue(), indirectValues);
+        }
+        write(" >>");
+    }
+
+    private void writeEntry(final COSName key, final COSBase value, final boolean indirect) throws IOException {
+        write(" ");
+        key.writePDF(out);
+        write(" ");
+        if(indirect || COSName.FONT_DESC.equals(key)){
+            writeReference(value);
+        } else if(value instanceof COSDictionary && !(value instanceof COSStream)){
+            writeDictionary((COSDictionary) value, COSName.FONT.equals(key) || COSName.XOBJECT.equals(key));
+        } else {
+            writeDirect(value);
+        }
+    }
+
+    private void writeDirect(final COSBase value) throws IOException {
+        if(value instanceof COSObject){
+            writeReference(((COSObject) value).getObject());
+        } else if(value instanceof COSStream){
+            writeReference(value);
+        } else if(value instanceof COSDictionary){
+            writeDictionary((COSDictionary) value, false);
+        } else if(value instanceof COSArray){
+            write("[");
+            for(final COSBase item : (COSArray) value){
+                write(" ");
+                writeDirect(item);
+            }
+            write(" ]");
+        } else if(value instanceof COSName){
+            ((COSName) value).writePDF(out);
+        } else if(value instanceof COSInteger){
+            ((COSInteger) value).writePDF(out);
+        } else if(value instanceof COSFloat){
+            ((COSFloat) value).writePDF(out);
+        } else if(value instanceof COSString){
+            ((COSString) value).writePDF(out);
+        } else if(value instanceof COSBoolean){
+            ((COSBoolean) value).writePDF(out);
+        } else if(value == null || value instanceof COSNull){
+            COSNull.NULL.writePDF(out);
+        } else {
+            throw new IOException(String.format("%s can't be written", value.getClass().getSimpleName()));
+        }
+    }
+
+    private void writeReference(final COSBase value) throws IOException {
+        final COSBase object = value instanceof COSObject ? ((COSObject) value).getObject() : value;
+        Integer number = objectNumbers.get(object);
+        if(number == null){
+            number = reserveObject();
+            objectNumbers.put(object, number);
+            pendingObjects.add(object);
+        }
+        write(number + " 0 R");
+    }
+
+    private void write(final String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Counts the written bytes, to know the offsets of the objects.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(final OutputStream stream) {
+            super(stream);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -1,159 +1,245 @@
 package com.viae.common.pdf.service.impl;
 
-import java.io.File;
 import java.io.IOException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
-import org.apache.pdfbox.exceptions.COSVisitorException;
-import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.common.PDRectangle;
-import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
 
-import com.viae.common.pdf.model.FontFamily;
-import com.viae.common.pdf.model.PdfContext;
+import com.viae.common.pdf.model.TextFont;
 import com.viae.common.utils.validate.Validate;
 
 public class StringPdfBuilder extends PdfBuilder {
 
-    private static final String PREFIX_CONFIG = "conf|";
-    private static final String PREFIX_TEXT = "text|";
-    private static final String PREFIX_IMAGE = "img|";
-    private static final String PREFIX_TABLE_ROW = "table_row|";
-
-    public StringPdfBuilder(){
-        context = PdfContext.builder().create().build();
-    }
-
     protected static interface BuilderClient {
         void whenBuilding(StringPdfBuilder builder);
     }
 
     public void buildPdf(final String content, final PageSize pageSize, final String path){
-        try(final PDDocument document = new PDDocument()){
-            this.document = document;
-            final PDPage page  = new PDPage(getPageSize(pageSize));
-            document.addPage(page);
-            initPageStart(page.findMediaBox());
-
-            try(final PDPageContentStream cos = new PDPageContentStream(document, page)){
-                contentStream = cos;
-
-                final String[] lines = content.split("\\|EOL\\|\r?\n");
-                for(final String contentLine : lines){
-                    handleContentLine(contentLine, document, page);
+        buildPdf(new StringReader(content), pageSize, path);
+    }
+
+    /**
+     * @param content, the template.
+     * @param pageSize, the page size of the pdf.
+     * @param stream, the stream to write the pdf to, the stream is not closed.
+     * @return the number of bytes written.
+     */
+    public long buildPdf(final String content, final PageSize pageSize, final OutputStream stream){
+        return buildPdf(new StringReader(content), pageSize, PdfOutput.toStream(stream));
+    }
+
+    /**
+     * @param content, the template.
+     * @param pageSize, the page size of the pdf.
+     * @param channel, the channel to write the pdf to, the channel is not closed.
+     * @return the number of bytes written.
+     */
+    public long buildPdf(final String content, final PageSize pageSize, final WritableByteChannel channel){
+        return buildPdf(new StringReader(content), pageSize, PdfOutput.toChannel(channel));
+    }
+
+    /**
+     * Build the pdf from a template that is read from the given channel.
+     * The channel is not closed.
+     *
+     * @see #buildPdf(Reader, PageSize, String)
+     */
+    public void buildPdf(final ReadableByteChannel content, final Charset charset, final PageSize pageSize, final String path){
+        buildPdf(Channels.newReader(content, charset.newDecoder(), -1), pageSize, path);
+    }
+
+    /**
+     * Build the pdf from a template that is read from the given reader.
+     * The template is read content line by content line and every line is laid out before the next one is read
+     * (except for the rows of a table, which are laid out together),
+     * so the template never has to fit in memory as a whole. The reader is not closed.
+     *
+     * @param content, the reader to read the template from.
+     * @param pageSize, the page size of the pdf.
+     * @param path, the path to save the pdf to.
+     */
+    public void buildPdf(final Reader content, final PageSize pageSize, final String path){
+        buildPdf(content, pageSize, PdfOutput.toFile(path));
+    }
+
+    /**
+     * Build the pdf from a template that is read from the given reader.
+     *
+     * @param content, the reader to read the template from, the reader is not closed.
+     * @param pageSize, the page size of the pdf.
+     * @param output, the output to save the pdf to.
+     * @return the number of bytes written.
+     * @see #buildPdf(Reader, PageSize, String)
+     */
+    public long buildPdf(final Reader content, final PageSize pageSize, final PdfOutput output){
+        final InstructionReader instructionReader = new InstructionReader(content);
+        return buildPdf(layout(new InstructionSource() {
+            @Override
+            public TemplateInstruction next() throws IOException {
+                final RenderStatistics statistics = getStatistics();
+                if(statistics == null){
+                    return instructionReader.readInstruction();
                 }
+                final long start = System.nanoTime();
+                final TemplateInstruction instruction = instructionReader.readInstruction();
+                statistics.addTime(RenderStatistics.Timer.PARSE, start);
+                return instruction;
             }
+        }, Collections.<TemplateInstruction>emptyList(), TemplateData.NONE, pageSize), output);
+    }
 
-            document.save(path);
-        } catch(final IOException | COSVisitorException e){
-            throw new RuntimeException(e);
-        }
+    /**
+     * Build the pdf from a compiled template, without parsing the template again.
+     *
+     * @param template, the compiled template (e.g. from a {@link TemplateCache}).
+     * @param pageSize, the page size of the pdf.
+     * @param path, the path to save the pdf to.
+     */
+    public void buildPdf(final CompiledTemplate template, final PageSize pageSize, final String path){
+        buildPdf(template, pageSize, PdfOutput.toFile(path));
     }
 
-    private void handleContentLine(final String contentLine, final PDDocument document, final PDPage page) throws IOException{
-        if(contentLine.startsWith(PREFIX_CONFIG)){
-            handleConfigContent(contentLine);
-        } else if(contentLine.startsWith(PREFIX_TEXT)){
-            handleTextContent(contentLine, document, page.getMediaBox());
-        } else if(contentLine.startsWith(PREFIX_IMAGE)){
-            handleImageContent(contentLine, document, page);
-        } else if(contentLine.startsWith(PREFIX_TABLE_ROW)){
-            final String[] data = contentLine.replace(PREFIX_TABLE_ROW, "").split("\\|");
-            writeTable(page, new String[][]{data});
-        }
+    /**
+     * Build the pdf from a compiled template, without parsing the template again.
+     *
+     * @param template, the compiled template (e.g. from a {@link TemplateCache}).
+     * @param pageSize, the page size of the pdf.
+     * @param output, the output to save the pdf to.
+     * @return the number of bytes written.
+     */
+    public long buildPdf(final CompiledTemplate template, final PageSize pageSize, final PdfOutput output){
+        return buildPdf(layout(template, pageSize), output);
     }
 
-    private void handleImageContent(final String contentLine, final PDDocument document, final PDPage page) throws IOException {
-        final Pattern pattern = Pattern.compile("^img\\|([^|]+)\\|([^|]+)\\|?([^|]*)$");
-        final Matcher matcher = pattern.matcher(contentLine);
-        if(matcher.matches()){
-            final String path = matcher.group(1);
-            final String extensionValue = matcher.group(2);
-            final String maxWidthValue = matcher.group(3);
-            final ImageType extension = "jpg".equals(extensionValue.toLowerCase()) || "jpeg".equals(extensionValue.toLowerCase()) ? ImageType.JPEG : ImageType.OTHER;
-            final File image = new File(path);
-            Validate.isTrue(image.exists(), "image does not exist");
-            if(maxWidthValue != null && ! "".equals(maxWidthValue)){
-                writeImage(page, image, extension, Float.parseFloat(maxWidthValue));
-            } else {
-                writeImage(page, image, extension);
+    /**
+     * Build the pdf from a compiled template, resolving its placeholders (e.g. '${customer.name}') and repeated sections against the given data.
+     *
+     * @param template, the compiled template (e.g. from a {@link TemplateCache}).
+     * @param data, the data to render the template with: a map or a bean.
+     * @param pageSize, the page size of the pdf.
+     * @param path, the path to save the pdf to.
+     */
+    public void buildPdf(final CompiledTemplate template, final Object data, final PageSize pageSize, final String path){
+        buildPdf(template, data, pageSize, PdfOutput.toFile(path));
+    }
+
+    /**
+     * Build the pdf from a compiled template, resolving its placeholders (e.g. '${customer.name}') and repeated sections against the given data.
+     * The data is only read while the template is laid out, no template string is created for the data.
+     *
+     * @param template, the compiled template (e.g. from a {@link TemplateCache}).
+     * @param data, the data to render the template with: a map or a bean.
+     * @param pageSize, the page size of the pdf.
+     * @param output, the output to save the pdf to.
+     * @return the number of bytes written.
+     */
+    public long buildPdf(final CompiledTemplate template, final Object data, final PageSize pageSize, final PdfOutput output){
+        return buildPdf(layout(template, data, pageSize), output);
+    }
+
+    /**
+     * Render a compiled template without blocking the calling thread, see {@link #buildPdfAsync(CompiledTemplate, Object, PageSize, PdfOutput, Executor, Executor)}.
+     */
+    public CompletableFuture<RenderResult> buildPdfAsync(final CompiledTemplate template, final PageSize pageSize, final PdfOutput output, final Executor cpuExecutor, final Executor ioExecutor){
+        return buildPdfAsync(template, null, pageSize, output, cpuExecutor, ioExecutor);
+    }
+
+    /**
+     * Render a compiled template with the given data without blocking the calling thread:
+     * the template is laid out and painted on the cpu executor and saved on the io executor.
+     * Cancelling the future stops the rendering at the next page, the builder can be reused once the future is completed
+     * (once {@link #whenAsyncRenderStopped()} is completed when the future is cancelled).
+     *
+     * @param template, the compiled template.
+     * @param data, the data to render the template with: a map or a bean, null to render the template as written.
+     * @param pageSize, the page size of the pdf.
+     * @param output, the output to save the pdf to.
+     * @param cpuExecutor, the executor to lay out and paint the pdf on, e.g. a pool with a thread per processor.
+     * @param ioExecutor, the executor to save the pdf on.
+     * @return the future result of the pdf.
+     */
+    public CompletableFuture<RenderResult> buildPdfAsync(final CompiledTemplate template, final Object data, final PageSize pageSize, final PdfOutput output,
+            final Executor cpuExecutor, final Executor ioExecutor){
+        Validate.notNull(template, "template should be provided");
+        return buildPdfAsync(new Callable<DocumentLayout>() {
+            @Override
+            public DocumentLayout call() {
+                return layout(template, data, pageSize);
             }
-        } else {
-            throw new IllegalArgumentException(String.format("%s is not a valid text line!\nShould be of format 'img|path|extension|(|max width)|EOL|\n'", contentLine + ""));
-        }
+        }, output, cpuExecutor, ioExecutor);
     }
 
-    private void handleTextContent(final String textLine, final PDDocument document, final PDRectangle rect) throws IOException {
-        final Pattern pattern = Pattern.compile("^text\\|([^|]+)$");
-        final Matcher matcher = pattern.matcher(textLine);
-        if(matcher.matches()){
-            writeText(textLine, document, rect);
-        } else {
-            throw new IllegalArgumentException(String.format("%s is not a valid text line!\nShould be of format 'text|text|EOL|\n'", textLine + ""));
-        }
+    /**
+     * Lay out a compiled template without painting it, e.g. to know the number of pages up front.
+     *
+     * @param template, the compiled template.
+     * @param pageSize, the page size of the pdf.
+     * @return the layout, to paint with {@link #buildPdf(DocumentLayout, PdfOutput)}.
+     */
+    public DocumentLayout layout(final CompiledTemplate template, final PageSize pageSize){
+        return layout(template, null, pageSize);
     }
 
-    private void handleConfigContent(final String configLine){
-        final Pattern pattern = Pattern.compile("^conf\\|([^|]+)\\|([^|]+)$");
-        final Matcher matcher = pattern.matcher(configLine);
-        if(matcher.matches()){
-            final String key = matcher.group(1);
-            final String value = matcher.group(2);
-            handleConfig(key, value);
-        } else {
-            throw new IllegalArgumentException(String.format("%s is not a valid config line!\nShould be of format 'conf|key|value|EOL|\n'", configLine + ""));
-        }
+    /**
+     * Lay out a compiled template with the given data without painting it.
+     *
+     * @param template, the compiled template.
+     * @param data, the data to render the template with: a map or a bean, null to render the template as written.
+     * @param pageSize, the page size of the pdf.
+     * @return the layout, to paint with {@link #buildPdf(DocumentLayout, PdfOutput)}.
+     */
+    public DocumentLayout layout(final CompiledTemplate template, final Object data, final PageSize pageSize){
+        final Iterator<TemplateInstruction> instructions = template.getInstructions().iterator();
+        return layout(new InstructionSource() {
+            @Override
+            public TemplateInstruction next() {
+                return instructions.hasNext() ? instructions.next() : null;
+            }
+        }, template.getInstructions(), TemplateData.of(data), pageSize);
     }
 
-    private void handleConfig(final String key, final String value){
-        switch (key) {
-            case "font_family":
-                context = PdfContext.builder().deepCopy(context).fontFamily(getFontFamily(value)).build();
-                break;
-            case "font_size":
-                context = PdfContext.builder().deepCopy(context).fontSize(Float.parseFloat(value)).build();
-                break;
-            case "line_height":
-                context = PdfContext.builder().deepCopy(context).lineHeight(Integer.parseInt(value)).build();
-                break;
-            case "margin_left":
-                context = PdfContext.builder().deepCopy(context).marginLeft(Float.parseFloat(value)).build();
-                break;
-            case "margin_right":
-                context = PdfContext.builder().deepCopy(context).marginRight(Float.parseFloat(value)).build();
-                break;
-            case "border_width":
-                context = PdfContext.builder().deepCopy(context).borderWidth(Float.parseFloat(value)).build();
-                break;
-            case "cell_margin_left":
-                context = PdfContext.builder().deepCopy(context).cellMarginLeft(Float.parseFloat(value)).build();
-                break;
-            case "cell_margin_bottom":
-                context = PdfContext.builder().deepCopy(context).cellMarginBottom(Float.parseFloat(value)).build();
-                break;
-            case "cell_margin_right":
-                context = PdfContext.builder().deepCopy(context).cellMarginRight(Float.parseFloat(value)).build();
-                break;
-            case "cell_margin_top":
-                context = PdfContext.builder().deepCopy(context).cellMarginTop(Float.parseFloat(value)).build();
-                break;
-            default:
-                throw new UnsupportedOperationException(String.format("Configuration for %s is not supported yet.", key));
+    /**
+     * @param upcoming, the instructions that are known up front, their images are prefetched when an image prefetch executor is set.
+     */
+    private DocumentLayout layout(final InstructionSource instructions, final List<TemplateInstruction> upcoming, final TemplateData data, final PageSize pageSize){
+        final PDPage page = new PDPage(getPageSize(pageSize));
+        startLayout(page.findMediaBox());
+        try{
+            if(isPrefetchingImages()){
+                for(final TemplateInstruction instruction : upcoming){
+                    instruction.prefetch(this);
+                }
+            }
+            TemplateInstruction instruction = instructions.next();
+            while(instruction != null){
+                instruction.execute(this, page, data);
+                instruction = instructions.next();
+            }
+            return finishLayout();
+        } catch(final IOException e){
+            throw new RuntimeException(e);
+        } finally {
+            reset();
         }
     }
 
-    protected FontFamily getFontFamily(final String fontFamily) {
-        switch (fontFamily) {
-            case "HELVETICA_BOLD":
-                return FontFamily.HELVETICA_BOLD;
-            case "HELVETICA":
-                return FontFamily.HELVETICA;
-            case "COURIER":
-                return FontFamily.COURIER;
-            default:
-                throw new UnsupportedOperationException(String.format("font family %s is currently not supported", fontFamily));
-        }
+    protected TextFont getFontFamily(final String fontFamily) {
+        return TemplateInstruction.getFontFamily(fontFamily);
+    }
+
+    private static interface InstructionSource {
+        TemplateInstruction next() throws IOException;
     }
 }
@@ -0,0 +1,90 @@
+package com.viae.common.pdf.service.impl;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.viae.common.utils.validate.Validate;
+
+/**
+ * Cache of compiled templates by template id.
+ * When the cache is full, the least recently used template is evicted.
+ *
+ * @author Vandeperre Maarten
+ */
+public class TemplateCache {
+    private final Map<String, CompiledTemplate> templates;
+
+    /**
+     * @param maxSize, the maximum number of compiled templates to keep.
+     */
+    public TemplateCache(final int maxSize) {
+        Validate.isTrue(maxSize > 0, "max size should be positive");
+        templates = new LinkedHashMap<String, CompiledTemplate>(16, 0.75f, true){
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, CompiledTemplate> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param templateId, the id of the template.
+     * @return the compiled template, or null when it isn't cached (anymore).
+     */
+    public synchronized CompiledTemplate get(final String templateId) {
+        return templates.get(templateId);
+    }
+
+    /**
+     * Compile the given template and cache it.
+     *
+     * @param templateId, the id of the template.
+     * @param template, the reader to read the template content from. The reader is not closed.
+     * @return the compiled template.
+     * @throws IOException when the template can't be read.
+     */
+    public CompiledTemplate compile(final String templateId, final Reader template) throws IOException {
+        final CompiledTemplate compiledTemplate = CompiledTemplate.compile(template);
+        synchronized (this) {
+            templates.put(templateId, compiledTemplate);
+        }
+        return compiledTemplate;
+    }
+
+    /**
+     * @param templateId, the id of the template.
+     * @param template, the template content, only compiled when the template isn't cached.
+     * @return the cached or freshly compiled template.
+     */
+    public CompiledTemplate getOrCompile(final String templateId, final String template) {
+        final CompiledTemplate cached = get(templateId);
+        if(cached != null){
+            return cached;
+        }
+        final CompiledTemplate compiledTemplate = CompiledTemplate.compile(template);
+        synchronized (this) {
+            templates.put(templateId, compiledTemplate);
+        }
+        return compiledTemplate;
+    }
+
+    /**
+     * Remove the template from the cache, e.g. when the template has changed.
+     *
+     * @param templateId, the id of the template.
+     */
+    public synchronized void invalidate(final String templateId) {
+        templates.remove(templateId);
+    }
+
+    /**
+     * @return the number of cached templates.
+     */
+    public synchronized int size() {
+        return templates.size();
+    }
+}
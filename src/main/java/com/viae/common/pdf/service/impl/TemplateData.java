@@ -0,0 +1,152 @@
+package com.viae.common.pdf.service.impl;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The data a string based template is rendered with: a map or a bean, plus the variables of the repeated sections that are being rendered.
+ * A property path (e.g. 'customer.name') starts with a variable or a property of the data and follows the map keys or bean properties from there.
+ * The getters of the bean classes are looked up once.
+ *
+ * @author Vandeperre Maarten
+ */
+final class TemplateData {
+    /**
+     * No data is bound, the template is rendered as written.
+     */
+    static final TemplateData NONE = new TemplateData(null, null, null, null);
+
+    private static final Pattern PATH_SEPARATOR_PATTERN = Pattern.compile("\\.");
+    private static final ConcurrentMap<Class<?>, Map<String, Method>> GETTERS = new ConcurrentHashMap<>();
+
+    private final Object root;
+    private final TemplateData parent;
+    private final String variable;
+    private final Object value;
+
+    private TemplateData(final Object root, final TemplateData parent, final String variable, final Object value) {
+        this.root = root;
+        this.parent = parent;
+        this.variable = variable;
+        this.value = value;
+    }
+
+    /**
+     * @param root, the data (a map or a bean), null when no data is bound.
+     * @return the template data.
+     */
+    static TemplateData of(final Object root) {
+        return root != null ? new TemplateData(root, null, null, null) : NONE;
+    }
+
+    /**
+     * @param path, a property path, e.g. 'customer.name'.
+     * @return the names of the properties of the path.
+     */
+    static String[] parsePath(final String path) {
+        final String[] names = PATH_SEPARATOR_PATTERN.split(path.trim());
+        for(final String name : names){
+            if(name.isEmpty()){
+                throw new IllegalArgumentException(String.format("%s is not a valid property path!\nShould be of format 'name(.name)*'", path));
+            }
+        }
+        return names;
+    }
+
+    boolean isBound() {
+        return root != null;
+    }
+
+    /**
+     * @param variable, the name of the variable.
+     * @param value, the value of the variable.
+     * @return data in which the variable is defined as well.
+     */
+    TemplateData with(final String variable, final Object value) {
+        return new TemplateData(root, this, variable, value);
+    }
+
+    /**
+     * @param path, the names of the properties to follow.
+     * @return the value, or null when a property on the path is null (or a map doesn't contain the key).
+     */
+    Object get(final String[] path) {
+        Object current = resolveFirst(path[0]);
+        for(int i = 1; i < path.length && current != null; i++){
+            current = getProperty(current, path[i]);
+        }
+        return current;
+    }
+
+    /**
+     * @param path, the names of the properties to follow.
+     * @return the elements of the collection (or array) the path refers to, no elements when the value is null.
+     */
+    Iterable<?> getCollection(final String[] path) {
+        final Object collection = get(path);
+        if(collection == null){
+            return Collections.emptyList();
+        } else if(collection instanceof Iterable){
+            return (Iterable<?>) collection;
+        } else if(collection instanceof Object[]){
+            return Arrays.asList((Object[]) collection);
+        }
+        throw new IllegalArgumentException(String.format("%s is not a collection", StringUtils.join(path, '.')));
+    }
+
+    private Object resolveFirst(final String name) {
+        for(TemplateData data = this; data.variable != null; data = data.parent){
+            if(data.variable.equals(name)){
+                return data.value;
+            }
+        }
+        return getProperty(root, name);
+    }
+
+    private static Object getProperty(final Object target, final String name) {
+        if(target instanceof Map){
+            return ((Map<?, ?>) target).get(name);
+        }
+        final Method getter = getGetters(target.getClass()).get(name);
+        if(getter == null){
+            throw new IllegalArgumentException(String.format("%s has no property %s", target.getClass().getName(), name));
+        }
+        try {
+            return getter.invoke(target);
+        } catch (final IllegalAccessException e) {
+            throw new RuntimeException(e);
+        } catch (final InvocationTargetException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static Map<String, Method> getGetters(final Class<?> type) {
+        Map<String, Method> getters = GETTERS.get(type);
+        if(getters == null){
+            getters = new HashMap<>();
+            try {
+                for(final PropertyDescriptor property : Introspector.getBeanInfo(type).getPropertyDescriptors()){
+                    if(property.getReadMethod() != null){
+                        getters.put(property.getName(), property.getReadMethod());
+                    }
+                }
+            } catch (final IntrospectionException e) {
+                throw new RuntimeException(e);
+            }
+            GETTERS.putIfAbsent(type, getters);
+        }
+        return getters;
+    }
+}
@@ -0,0 +1,478 @@
+package com.viae.common.pdf.service.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import com.viae.common.pdf.model.EmbeddedFont;
+import com.viae.common.pdf.model.FontFamily;
+import com.viae.common.pdf.model.PdfContext;
+import com.viae.common.pdf.model.TextFont;
+import com.viae.common.pdf.service.impl.PdfBuilder.ImageType;
+import com.viae.common.utils.validate.Validate;
+
+/**
+ * A parsed content line of a string based template.
+ * Instructions are immutable: their arguments are parsed once and they can be executed on any {@link StringPdfBuilder}.
+ *
+ * @author Vandeperre Maarten
+ */
+abstract class TemplateInstruction {
+
+    private static final String PREFIX_CONFIG = "conf|";
+    private static final String PREFIX_TEXT = "text|";
+    private static final String PREFIX_IMAGE = "img|";
+    private static final String PREFIX_TABLE_ROW = "table_row|";
+    private static final String PREFIX_REPEAT = "repeat|";
+    private static final String END_REPEAT = "end_repeat";
+
+    private static final Pattern CONFIG_PATTERN = Pattern.compile("^conf\\|([^|]+)\\|([^|]+)$");
+    private static final Pattern TEXT_PATTERN = Pattern.compile("^text\\|([^|]+)$");
+    private static final Pattern REPEAT_PATTERN = Pattern.compile("^repeat\\|([^|]+)\\|([^|]+)$");
+    private static final Pattern IMAGE_PATTERN = Pattern.compile("^img\\|([^|]+)\\|([^|]+)\\|?([^|]*)$");
+    private static final Pattern COLUMN_SEPARATOR_PATTERN = Pattern.compile("\\|");
+
+    /**
+     * Execute the instruction on the given builder.
+     *
+     * @param builder, the builder to render on.
+     * @param page, the current page of the builder.
+     * @param data, the data to resolve the placeholders against.
+     * @throws IOException when the instruction can't be written to the pdf.
+     */
+    abstract void execute(StringPdfBuilder builder, PDPage page, TemplateData data) throws IOException;
+
+    /**
+     * Request the images the instruction will write to be loaded ahead of the layout.
+     *
+     * @param builder, the builder that will execute the instruction.
+     */
+    void prefetch(final StringPdfBuilder builder) {
+        //most instructions don't write images
+    }
+
+    /**
+     * @param contentLine, a content line of the template (without '|EOL|').
+     * @return the instruction for the content line, or null when the content line has no known prefix.
+     */
+    static TemplateInstruction parse(final String contentLine) {
+        if(contentLine.startsWith(PREFIX_CONFIG)){
+            return parseConfig(contentLine);
+        } else if(contentLine.startsWith(PREFIX_TEXT)){
+            return parseText(contentLine);
+        } else if(contentLine.startsWith(PREFIX_IMAGE)){
+            return parseImage(contentLine);
+        } else if(contentLine.startsWith(PREFIX_TABLE_ROW)){
+            return new TableInstruction(new TableSection[]{parseRow(contentLine)});
+        }
+        return null;
+    }
+
+    /**
+     * @param contentLine, a content line of the template (without '|EOL|').
+     * @return true when the content line starts a repeated section, 'repeat|collection path|variable|EOL|'.
+     */
+    static boolean isRepeatStart(final String contentLine) {
+        return contentLine.startsWith(PREFIX_REPEAT);
+    }
+
+    /**
+     * @param contentLine, a content line of the template (without '|EOL|').
+     * @return true when the content line ends a repeated section, 'end_repeat|EOL|'.
+     */
+    static boolean isRepeatEnd(final String contentLine) {
+        return END_REPEAT.equals(contentLine);
+    }
+
+    /**
+     * @param repeatLine, the content line starting the repeated section.
+     * @param rows, the table rows between the start and the end of the section (single rows, as parsed).
+     * @return a table of which the rows are repeated for every element of the collection.
+     */
+    static TableInstruction parseRepeat(final String repeatLine, final List<TableInstruction> rows) {
+        final Matcher matcher = REPEAT_PATTERN.matcher(repeatLine);
+        if(!matcher.matches()){
+            throw new IllegalArgumentException(String.format("%s is not a valid repeat line!\nShould be of format 'repeat|collection path|variable|EOL|\n'", repeatLine + ""));
+        }
+        Validate.isTrue(!rows.isEmpty(), "a repeated section should contain at least one table row");
+        final Row[] repeatedRows = new Row[rows.size()];
+        for(int i = 0; i < repeatedRows.length; i++){
+            Validate.isTrue(rows.get(i).getColumnCount() == rows.get(0).getColumnCount(), "every row of a repeated section should have the same number of columns");
+            repeatedRows[i] = (Row) rows.get(i).sections[0];
+        }
+        return new TableInstruction(new TableSection[]{new RepeatedRows(TemplateData.parsePath(matcher.group(1)), matcher.group(2).trim(), repeatedRows)});
+    }
+
+    private static Row parseRow(final String tableRowLine) {
+        final String[] columns = COLUMN_SEPARATOR_PATTERN.split(tableRowLine.substring(PREFIX_TABLE_ROW.length()));
+        final TemplateText[] cells = new TemplateText[columns.length];
+        for(int i = 0; i < columns.length; i++){
+            cells[i] = TemplateText.parse(columns[i]);
+        }
+        return new Row(cells);
+    }
+
+    private static TemplateInstruction parseConfig(final String configLine) {
+        final Matcher matcher = CONFIG_PATTERN.matcher(configLine);
+        if(matcher.matches()){
+            final ConfigKey key = ConfigKey.forKey(matcher.group(1));
+            return new ConfigInstruction(key, key.parse(matcher.group(2)));
+        } else {
+            throw new IllegalArgumentException(String.format("%s is not a valid config line!\nShould be of format 'conf|key|value|EOL|\n'", configLine + ""));
+        }
+    }
+
+    private static TemplateInstruction parseText(final String textLine) {
+        final Matcher matcher = TEXT_PATTERN.matcher(textLine);
+        if(matcher.matches()){
+            return new TextInstruction(TemplateText.parse(matcher.group(1)));
+        } else {
+            throw new IllegalArgumentException(String.format("%s is not a valid text line!\nShould be of format 'text|text|EOL|\n'", textLine + ""));
+        }
+    }
+
+    private static TemplateInstruction parseImage(final String imageLine) {
+        final Matcher matcher = IMAGE_PATTERN.matcher(imageLine);
+        if(matcher.matches()){
+            final String path = matcher.group(1);
+            final String extensionValue = matcher.group(2).toLowerCase();
+            final String maxWidthValue = matcher.group(3);
+            final ImageType extension = "jpg".equals(extensionValue) || "jpeg".equals(extensionValue) ? ImageType.JPEG : ImageType.OTHER;
+            final Float maxWidth = maxWidthValue != null && ! "".equals(maxWidthValue) ? Float.valueOf(maxWidthValue) : null;
+            return new ImageInstruction(new File(path), extension, maxWidth);
+        } else {
+            throw new IllegalArgumentException(String.format("%s is not a valid text line!\nShould be of format 'img|path|extension|(|max width)|EOL|\n'", imageLine + ""));
+        }
+    }
+
+    /**
+     * @param fontFamily, the name of a standard font family or of a registered font (see {@link EmbeddedFont#register(String, java.io.File)}).
+     * @return the font.
+     */
+    static TextFont getFontFamily(final String fontFamily) {
+        switch (fontFamily) {
+            case "HELVETICA_BOLD":
+                return FontFamily.HELVETICA_BOLD;
+            case "HELVETICA":
+                return FontFamily.HELVETICA;
+            case "COURIER":
+                return FontFamily.COURIER;
+            default:
+                final EmbeddedFont font = EmbeddedFont.forName(fontFamily);
+                if(font == null){
+                    throw new UnsupportedOperationException(String.format("font family %s is currently not supported", fontFamily));
+                }
+                return font;
+        }
+    }
+
+    /**
+     * The supported configuration keys, with their value already parsed.
+     */
+    enum ConfigKey {
+        FONT_FAMILY("font_family") {
+            @Override
+            Object parse(final String value) {
+                return getFontFamily(value);
+            }
+
+            @Override
+            void apply(final PdfContext.Builder builder, final Object value) {
+                builder.fontFamily((TextFont) value);
+            }
+        },
+        FONT_SIZE("font_size") {
+            @Override
+            void apply(final PdfContext.Builder builder, final Object value) {
+                builder.fontSize((Float) value);
+            }
+        },
+        LINE_HEIGHT("line_height") {
+            @Override
+            Object parse(final String value) {
+                return Float.valueOf(Integer.parseInt(value));
+            }
+
+            @Override
+            void apply(final PdfContext.Builder builder, final Object value) {
+                builder.lineHeight((Float) value);
+            }
+        },
+        MARGIN_LEFT("margin_left") {
+            @Override
+            void apply(final PdfContext.Builder builder, final Object value) {
+                builder.marginLeft((Float) value);
+            }
+        },
+        MARGIN_RIGHT("margin_right") {
+            @Override
+            void apply(final PdfContext.Builder builder, final Object value) {
+                builder.marginRight((Float) value);
+            }
+        },
+        BORDER_WIDTH("border_width") {
+            @Override
+            void apply(final PdfContext.Builder builder, final Object value) {
+                builder.borderWidth((Float) value);
+            }
+        },
+        CELL_MARGIN_LEFT("cell_margin_left") {
+            @Override
+            void apply(final PdfContext.Builder builder, final Object value) {
+                builder.cellMarginLeft((Float) value);
+            }
+        },
+        CELL_MARGIN_BOTTOM("cell_margin_bottom") {
+            @Override
+            void apply(final PdfContext.Builder builder, final Object value) {
+                builder.cellMarginBottom((Float) value);
+            }
+        },
+        CELL_MARGIN_RIGHT("cell_margin_right") {
+            @Override
+            void apply(final PdfContext.Builder builder, final Object value) {
+                builder.cellMarginRight((Float) value);
+            }
+        },
+        CELL_MARGIN_TOP("cell_margin_top") {
+            @Override
+            void apply(final PdfContext.Builder builder, final Object value) {
+                builder.cellMarginTop((Float) value);
+            }
+        };
+
+        private static final Map<String, ConfigKey> BY_KEY = new HashMap<>();
+        static {
+            for(final ConfigKey configKey : values()){
+                BY_KEY.put(configKey.key, configKey);
+            }
+        }
+
+        private final String key;
+
+        private ConfigKey(final String key) {
+            this.key = key;
+        }
+
+        static ConfigKey forKey(final String key) {
+            final ConfigKey configKey = BY_KEY.get(key);
+            if(configKey == null){
+                throw new UnsupportedOperationException(String.format("Configuration for %s is not supported yet.", key));
+            }
+            return configKey;
+        }
+
+        Object parse(final String value) {
+            return Float.valueOf(value);
+        }
+
+        abstract void apply(PdfContext.Builder builder, Object value);
+    }
+
+    static final class ConfigInstruction extends TemplateInstruction {
+        private final ConfigKey key;
+        private final Object value;
+
+        private ConfigInstruction(final ConfigKey key, final Object value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        void execute(final StringPdfBuilder builder, final PDPage page, final TemplateData data) {
+            final PdfContext.Builder contextBuilder = PdfContext.builder().deepCopy(builder.context);
+            key.apply(contextBuilder, value);
+            builder.context = contextBuilder.build();
+        }
+    }
+
+    static final class TextInstruction extends TemplateInstruction {
+        private final TemplateText text;
+
+        private TextInstruction(final TemplateText text) {
+            this.text = text;
+        }
+
+        @Override
+        void execute(final StringPdfBuilder builder, final PDPage page, final TemplateData data) throws IOException {
+            builder.writeText(text.resolve(data), page.getMediaBox());
+        }
+    }
+
+    static final class ImageInstruction extends TemplateInstruction {
+        private final File image;
+        private final ImageType type;
+        private final Float maxWidth;
+
+        private ImageInstruction(final File image, final ImageType type, final Float maxWidth) {
+            this.image = image;
+            this.type = type;
+            this.maxWidth = maxWidth;
+        }
+
+        @Override
+        void execute(final StringPdfBuilder builder, final PDPage page, final TemplateData data) throws IOException {
+            Validate.isTrue(image.exists(), "image does not exist");
+            if(maxWidth != null){
+                builder.writeImage(page, image, type, maxWidth);
+            } else {
+                builder.writeImage(page, image, type);
+            }
+        }
+
+        @Override
+        void prefetch(final StringPdfBuilder builder) {
+            //a missing image fails when the instruction is executed
+            if(image.exists()){
+                builder.prefetchImage(image, type);
+            }
+        }
+    }
+
+    /**
+     * A table, consecutive table rows and repeated sections with the same number of columns are merged into one table (see {@link InstructionReader}).
+     */
+    static final class TableInstruction extends TemplateInstruction {
+        private final TableSection[] sections;
+
+        private TableInstruction(final TableSection[] sections) {
+            this.sections = sections;
+        }
+
+        int getColumnCount() {
+            return sections[0].getColumnCount();
+        }
+
+        /**
+         * @return the number of rows in the template, the rows of a repeated section are counted once.
+         */
+        int getRowCount() {
+            int rowCount = 0;
+            for(final TableSection section : sections){
+                rowCount += section.getRowCount();
+            }
+            return rowCount;
+        }
+
+        /**
+         * @param tables, the tables to merge, in order.
+         * @return one table with the rows of all given tables.
+         */
+        static TableInstruction merge(final List<TableInstruction> tables) {
+            int sectionCount = 0;
+            for(final TableInstruction table : tables){
+                sectionCount += table.sections.length;
+            }
+            final TableSection[] sections = new TableSection[sectionCount];
+            int index = 0;
+            for(final TableInstruction table : tables){
+                System.arraycopy(table.sections, 0, sections, index, table.sections.length);
+                index += table.sections.length;
+            }
+            return new TableInstruction(sections);
+        }
+
+        @Override
+        void execute(final StringPdfBuilder builder, final PDPage page, final TemplateData data) throws IOException {
+            final List<String[]> rows = new ArrayList<>();
+            for(final TableSection section : sections){
+                section.addRows(rows, data);
+            }
+            if(!rows.isEmpty()){
+                builder.writeTable(page, rows.toArray(new String[rows.size()][]));
+            }
+        }
+    }
+
+    /**
+     * Rows of a table: a single row or a repeated section.
+     */
+    abstract static class TableSection {
+        abstract int getColumnCount();
+
+        abstract int getRowCount();
+
+        /**
+         * @param rows, the rows to add the resolved rows of this section to.
+         * @param data, the data to resolve the placeholders against.
+         */
+        abstract void addRows(List<String[]> rows, TemplateData data);
+    }
+
+    static final class Row extends TableSection {
+        private final TemplateText[] cells;
+
+        private Row(final TemplateText[] cells) {
+            this.cells = cells;
+        }
+
+        @Override
+        int getColumnCount() {
+            return cells.length;
+        }
+
+        @Override
+        int getRowCount() {
+            return 1;
+        }
+
+        @Override
+        void addRows(final List<String[]> rows, final TemplateData data) {
+            final String[] row = new String[cells.length];
+            for(int i = 0; i < cells.length; i++){
+                row[i] = cells[i].resolve(data);
+            }
+            rows.add(row);
+        }
+    }
+
+    /**
+     * Rows that are repeated for every element of a collection, the element is available as a variable in the placeholders of the rows.
+     * Without data, the rows are rendered once as written.
+     */
+    static final class RepeatedRows extends TableSection {
+        private final String[] collectionPath;
+        private final String variable;
+        private final Row[] rows;
+
+        private RepeatedRows(final String[] collectionPath, final String variable, final Row[] rows) {
+            this.collectionPath = collectionPath;
+            this.variable = variable;
+            this.rows = rows;
+        }
+
+        @Override
+        int getColumnCount() {
+            return rows[0].getColumnCount();
+        }
+
+        @Override
+        int getRowCount() {
+            return rows.length;
+        }
+
+        @Override
+        void addRows(final List<String[]> resolvedRows, final TemplateData data) {
+            if(!data.isBound()){
+                addRowsOnce(resolvedRows, data);
+                return;
+            }
+            for(final Object element : data.getCollection(collectionPath)){
+                addRowsOnce(resolvedRows, data.with(variable, element));
+            }
+        }
+
+        private void addRowsOnce(final List<String[]> resolvedRows, final TemplateData data) {
+            for(final Row row : rows){
+                row.addRows(resolvedRows, data);
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.viae.common.pdf.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Text of a string based template that can contain placeholders (e.g. '${customer.name}').
+ * The text is split into literal parts and property paths once, the placeholders are resolved when the template is rendered.
+ *
+ * @author Vandeperre Maarten
+ */
+final class TemplateText {
+    private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\$\\{([^}]+)\\}");
+    private static final String[][] NO_PATHS = new String[0][];
+
+    private final String text;
+    private final String[] literals;
+    private final String[][] paths;
+
+    private TemplateText(final String text, final String[] literals, final String[][] paths) {
+        this.text = text;
+        this.literals = literals;
+        this.paths = paths;
+    }
+
+    /**
+     * @param text, the text as written in the template.
+     * @return the parsed text.
+     */
+    static TemplateText parse(final String text) {
+        final Matcher matcher = PLACEHOLDER_PATTERN.matcher(text);
+        if(!matcher.find()){
+            return new TemplateText(text, null, NO_PATHS);
+        }
+        final List<String> literals = new ArrayList<>();
+        final List<String[]> paths = new ArrayList<>();
+        int start = 0;
+        do{
+            literals.add(text.substring(start, matcher.start()));
+            paths.add(TemplateData.parsePath(matcher.group(1)));
+            start = matcher.end();
+        } while(matcher.find());
+        literals.add(text.substring(start));
+        return new TemplateText(text, literals.toArray(new String[literals.size()]), paths.toArray(new String[paths.size()][]));
+    }
+
+    /**
+     * @param data, the data to resolve the placeholders against.
+     * @return the text with its placeholders replaced by their values (null values are replaced by an empty string),
+     *  the text as written when it has no placeholders or no data is bound.
+     */
+    String resolve(final TemplateData data) {
+        if(paths.length == 0 || !data.isBound()){
+            return text;
+        }
+        final StringBuilder resolved = new StringBuilder(text.length());
+        for(int i = 0; i < paths.length; i++){
+            resolved.append(literals[i]);
+            final Object value = data.get(paths[i]);
+            if(value != null){
+                resolved.append(value);
+            }
+        }
+        return resolved.append(literals[paths.length]).toString();
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
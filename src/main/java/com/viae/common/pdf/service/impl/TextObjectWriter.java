@@ -0,0 +1,95 @@
+package com.viae.common.pdf.service.impl;
+
+import java.io.IOException;
+
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+/**
+ * Writes consecutive text lines into a single text object (BT/ET) of a content stream.
+ * Lines are positioned relative to the previous line, lines at the same x position and with the same spacing
+ * are moved with the leading of the text state (T*), and the font is only set when it differs from the current font of the content stream.
+ * The text state (font and leading) is kept per content stream, it's reset when lines are written to another content stream.
+ *
+ * @author Vandeperre Maarten
+ */
+final class TextObjectWriter {
+    private static final float LEADING_TOLERANCE = 0.001f;
+
+    private PDPageContentStream contentStream;
+    private boolean textObjectOpen;
+    private PDFont font;
+    private float fontSize;
+    private float leading;
+    private boolean lineWritten;
+    private float lineX;
+    private float lineY;
+
+    /**
+     * Show a line of text, a text object is started when none is open yet.
+     *
+     * @param stream, the content stream to write to.
+     * @param text, the text of the line.
+     * @param lineFont, the font of the line.
+     * @param lineFontSize, the font size of the line.
+     * @param x, the absolute x position of the start of the line.
+     * @param y, the absolute y position of the base line.
+     * @throws IOException when the line can't be written.
+     */
+    void showLine(final PDPageContentStream stream, final String text, final PDFont lineFont, final float lineFontSize, final float x, final float y) throws IOException {
+        if(stream != contentStream){
+            endTextObject();
+            contentStream = stream;
+            font = null;
+            leading = 0;
+        }
+        if(!textObjectOpen){
+            contentStream.beginText();
+            textObjectOpen = true;
+            lineWritten = false;
+            lineX = 0;
+            lineY = 0;
+        }
+        if(lineFont != font || lineFontSize != fontSize){
+            contentStream.setFont(lineFont, lineFontSize);
+            font = lineFont;
+            fontSize = lineFontSize;
+        }
+        moveToLine(x, y);
+        contentStream.drawString(text);
+    }
+
+    private void moveToLine(final float x, final float y) throws IOException {
+        final float offsetX = x - lineX;
+        final float offsetY = y - lineY;
+        if(!lineWritten){
+            contentStream.moveTextPositionByAmount(offsetX, offsetY);
+        } else if(offsetX == 0 && offsetY < 0 && Math.abs(offsetY + leading) < LEADING_TOLERANCE){
+            contentStream.appendRawCommands("T*\n");
+        } else if(offsetX == 0 && offsetY < 0){
+            //TD moves to the next line and sets the leading for the following lines
+            contentStream.appendRawCommands(offsetX);
+            contentStream.appendRawCommands(" ");
+            contentStream.appendRawCommands(offsetY);
+            contentStream.appendRawCommands(" TD\n");
+            leading = -offsetY;
+        } else {
+            contentStream.moveTextPositionByAmount(offsetX, offsetY);
+        }
+        lineWritten = true;
+        lineX = x;
+        lineY = y;
+    }
+
+    /**
+     * End the open text object, if any.
+     *
+     * @throws IOException when the text object can't be ended.
+     */
+    void endTextObject() throws IOException {
+        if(textObjectOpen){
+            contentStream.endText();
+            textObjectOpen = false;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.viae.common.pdf.service.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.viae.common.pdf.model.TextFont;
+import com.viae.common.pdf.util.TextWrapUtil;
+import com.viae.common.utils.validate.Validate;
+
+/**
+ * Cache of wrapped texts that can be shared between documents (and builders on different threads),
+ * so texts that are repeated a lot (e.g. the status or country column of a report) are measured once.
+ * A text is cached per font family, font size and line width, texts longer than {@value #MAX_TEXT_LENGTH} characters aren't cached.
+ * When the cache is full, the least recently used text is evicted.
+ *
+ * @author Vandeperre Maarten
+ */
+public class WrapCache {
+    static final int MAX_TEXT_LENGTH = 256;
+
+    private final Map<WrapKey, int[]> lineEnds;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * @param maxSize, the maximum number of wrapped texts to keep.
+     */
+    public WrapCache(final int maxSize) {
+        Validate.isTrue(maxSize > 0, "max size should be positive");
+        lineEnds = new LinkedHashMap<WrapKey, int[]>(16, 0.75f, true){
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<WrapKey, int[]> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @see TextWrapUtil#getLineEnds(CharSequence, TextFont, float, float)
+     * @return the end offsets of the lines within the text, the array is shared and should not be modified.
+     */
+    int[] getLineEnds(final String text, final TextFont fontFamily, final float fontSize, final float maxLineWidth) {
+        if(text == null || text.isEmpty() || text.length() > MAX_TEXT_LENGTH){
+            return TextWrapUtil.getLineEnds(text, fontFamily, fontSize, maxLineWidth);
+        }
+        final WrapKey key = new WrapKey(text, fontFamily, fontSize, maxLineWidth);
+        synchronized (this) {
+            final int[] cached = lineEnds.get(key);
+            if(cached != null){
+                hitCount++;
+                return cached;
+            }
+            missCount++;
+        }
+        final int[] wrapped = TextWrapUtil.getLineEnds(text, fontFamily, fontSize, maxLineWidth);
+        synchronized (this) {
+            lineEnds.put(key, wrapped);
+        }
+        return wrapped;
+    }
+
+    /**
+     * @return the number of cached texts.
+     */
+    public synchronized int size() {
+        return lineEnds.size();
+    }
+
+    /**
+     * @return the number of texts that were served from the cache.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of texts that had to be measured.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    private static final class WrapKey {
+        private final String text;
+        private final TextFont fontFamily;
+        private final float fontSize;
+        private final float maxLineWidth;
+
+        private WrapKey(final String text, final TextFont fontFamily, final float fontSize, final float maxLineWidth) {
+            this.text = text;
+            this.fontFamily = fontFamily;
+            this.fontSize = fontSize;
+            this.maxLineWidth = maxLineWidth;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((text.hashCode() * 31 + fontFamily.hashCode()) * 31 + Float.floatToIntBits(fontSize)) * 31 + Float.floatToIntBits(maxLineWidth);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if(!(o instanceof WrapKey)){
+                return false;
+            }
+            final WrapKey other = (WrapKey) o;
+            return text.equals(other.text) && fontFamily == other.fontFamily
+                    && Float.floatToIntBits(fontSize) == Float.floatToIntBits(other.fontSize)
+                    && Float.floatToIntBits(maxLineWidth) == Float.floatToIntBits(other.maxLineWidth);
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package com.viae.common.pdf.util;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-import com.viae.common.pdf.model.FontFamily;
+import com.viae.common.pdf.model.GlyphWidthTable;
+import com.viae.common.pdf.model.TextFont;
 
 /**
  * Utility class to handle text wrapping within the pdf.
@@ -11,6 +13,9 @@ import com.viae.common.pdf.model.FontFamily;
  * @author Vandeperre Maarten
  */
 public class TextWrapUtil {
+    private static final char SPACE = ' ';
+    private static final int INITIAL_LINE_CAPACITY = 8;
+    private static final int[] NO_LINE_ENDS = new int[0];
 
     /**
      * Wrap the given text (regarding the given context).
@@ -21,28 +26,100 @@ public class TextWrapUtil {
      * @param maxLineWidth, the maximum width a text string should have within the pdf.
      * @return the wrap result: a combination of the max number of lines (i.e. how many lines were split of) and the lines them self.
      */
-    public static WrapResult<List<String>> wrapText(final String text, final FontFamily fontFamily, final float fontSize, final float maxLineWidth) {
-        final List<String> result = new LinkedList<>();
-        final float charWidth = getCharWidth(fontFamily, fontSize);
-        final int maxCharAmount = (int) (maxLineWidth / charWidth);
-
-        if(text != null){
-            String tempText = text;
-            while(tempText.length() > 0){
-                final int endIndex = maxCharAmount > tempText.length() ? tempText.length() : maxCharAmount;
-                final int lastSpaceIndex = tempText.substring(0, endIndex).trim().lastIndexOf(" ");
-                String toAdd = tempText;
-                if(lastSpaceIndex != -1 && tempText.length() > maxCharAmount){
-                    toAdd = tempText.substring(0, lastSpaceIndex + 1);
-                    tempText = tempText.substring(lastSpaceIndex + 1);
-                    result.add(toAdd);
-                } else {
-                    result.add(tempText);
-                    tempText = "";
+    public static WrapResult<List<String>> wrapText(final String text, final TextFont fontFamily, final float fontSize, final float maxLineWidth) {
+        final int[] lineEnds = getLineEnds(text, fontFamily, fontSize, maxLineWidth);
+        final List<String> result = new ArrayList<>(lineEnds.length);
+        int lineStart = 0;
+        for(final int lineEnd : lineEnds){
+            result.add(text.substring(lineStart, lineEnd));
+            lineStart = lineEnd;
+        }
+        return new WrapResult<>(result.size(), result);
+    }
+
+    /**
+     * Determine where the given text should be wrapped (regarding the given context), without copying the text.
+     * The text is broken after the last space that still fits on a line, the spaces stay at the end of the line.
+     * A word that is wider than the line is kept as a whole on its own line.
+     *
+     * @param text, the text you want to wrap
+     * @param fontFamily, the used font family (influences the width of the text string).
+     * @param fontSize, the used font size (influences the width of the text string).
+     * @param maxLineWidth, the maximum width a text string should have within the pdf.
+     * @return the end offsets (exclusive) of the lines within the text: line i runs from lineEnds[i - 1] (or 0) to lineEnds[i].
+     *  An empty array is returned for a null or empty text.
+     */
+    public static int[] getLineEnds(final CharSequence text, final TextFont fontFamily, final float fontSize, final float maxLineWidth) {
+        if(text == null || text.length() == 0){
+            return NO_LINE_ENDS;
+        }
+        final GlyphWidthTable widthTable = fontFamily.getGlyphWidthTable();
+        final float maxGlyphWidth = maxLineWidth / GlyphWidthTable.getScale(fontSize);
+        final int length = text.length();
+
+        int[] lineEnds = new int[INITIAL_LINE_CAPACITY];
+        int lineCount = 0;
+        for(int lineEnd = 0; lineEnd < length;){
+            lineEnd = getLineEnd(text, widthTable, maxGlyphWidth, lineEnd);
+            if(lineCount == lineEnds.length){
+                lineEnds = Arrays.copyOf(lineEnds, lineCount * 2);
+            }
+            lineEnds[lineCount++] = lineEnd;
+        }
+        return lineCount == lineEnds.length ? lineEnds : Arrays.copyOf(lineEnds, lineCount);
+    }
+
+    /**
+     * Determine where the given text should be wrapped, like {@link #getLineEnds(CharSequence, TextFont, float, float)},
+     * and add the line ends as the next cell of the given line breaks, without allocating anything once the line breaks have grown large enough.
+     *
+     * @param text, the text you want to wrap
+     * @param fontFamily, the used font family (influences the width of the text string).
+     * @param fontSize, the used font size (influences the width of the text string).
+     * @param maxLineWidth, the maximum width a text string should have within the pdf.
+     * @param lineBreaks, the line breaks to add the cell to, a null or empty text is added as a cell without lines.
+     */
+    public static void wrapCell(final CharSequence text, final TextFont fontFamily, final float fontSize, final float maxLineWidth, final LineBreaks lineBreaks) {
+        if(text == null || text.length() == 0){
+            lineBreaks.endCell();
+            return;
+        }
+        final GlyphWidthTable widthTable = fontFamily.getGlyphWidthTable();
+        final float maxGlyphWidth = maxLineWidth / GlyphWidthTable.getScale(fontSize);
+        final int length = text.length();
+
+        for(int lineEnd = 0; lineEnd < length;){
+            lineEnd = getLineEnd(text, widthTable, maxGlyphWidth, lineEnd);
+            lineBreaks.addLineEnd(lineEnd);
+        }
+        lineBreaks.endCell();
+    }
+
+    /**
+     * The line is broken after the last space that still fits, a word that is wider than the line is kept as a whole.
+     *
+     * @return the end offset (exclusive) of the line that starts at the given offset, always after the line start.
+     */
+    private static int getLineEnd(final CharSequence text, final GlyphWidthTable widthTable, final float maxGlyphWidth, final int lineStart) {
+        final int length = text.length();
+        int lastBreak = lineStart;
+        float lineWidth = 0;
+        boolean lineHasWord = false;
+        for(int i = lineStart; i < length; i++){
+            final char character = text.charAt(i);
+            lineWidth += widthTable.getWidth(character);
+            if(character == SPACE){
+                if(lineHasWord){
+                    lastBreak = i + 1;
+                }
+            } else {
+                lineHasWord = true;
+                if(lineWidth > maxGlyphWidth && lastBreak > lineStart){
+                    return lastBreak;
                 }
             }
         }
-        return new WrapResult<>(result.size(), result);
+        return length;
     }
 
     /**
@@ -58,8 +135,8 @@ public class TextWrapUtil {
      *  than max number of lines will be 2 (from the first result).
      *  than lines will contain 2 lines at index 0, and 1 line at index 1.
      */
-    public static WrapResult<List<List<String>>> wrapText(final String[] textArray, final FontFamily fontFamily, final float fontSize, final float maxLineWidth) {
-        final List<List<String>> result = new LinkedList<>();
+    public static WrapResult<List<List<String>>> wrapText(final String[] textArray, final TextFont fontFamily, final float fontSize, final float maxLineWidth) {
+        final List<List<String>> result = new ArrayList<>(textArray != null ? textArray.length : 0);
         int maxAmountOfLines = 0;
         if(textArray != null){
             for(final String text : textArray){
@@ -71,10 +148,6 @@ public class TextWrapUtil {
         return new WrapResult<>(maxAmountOfLines, result);
     }
 
-    private static float getCharWidth(final FontFamily fontFamily, final float fontSize) {
-        return fontFamily.getFontFamily().getFontDescriptor().getFontBoundingBox().getWidth() / 1000 * fontSize * fontFamily.getErrorMarginX();
-    }
-
     /**
      * Result of text wrapping.
      *
@@ -109,4 +182,111 @@ public class TextWrapUtil {
             return wrapResult;
         }
     }
+
+    /**
+     * The line breaks of a number of wrapped cells (e.g. all cells of a table), kept as end offsets in one flat array.
+     * Line i of a cell runs from the end of line i - 1 (or 0) to the end of line i, every line can be looked up directly.
+     * The line breaks can be cleared and reused, so wrapping a table doesn't allocate per cell.
+     *
+     * @author Vandeperre Maarten
+     */
+    public static final class LineBreaks {
+        private int[] lineEnds = new int[INITIAL_LINE_CAPACITY];
+        private int[] cellEnds = new int[INITIAL_LINE_CAPACITY];
+        private int lineCount;
+        private int cellCount;
+        private int maxNumberOfLines;
+
+        /**
+         * Add the given line ends (e.g. from {@link TextWrapUtil#getLineEnds(CharSequence, TextFont, float, float)}) as the next cell.
+         *
+         * @param cellLineEnds, the end offsets of the lines of the cell.
+         */
+        public void addCell(final int[] cellLineEnds) {
+            ensureLineCapacity(lineCount + cellLineEnds.length);
+            System.arraycopy(cellLineEnds, 0, lineEnds, lineCount, cellLineEnds.length);
+            lineCount += cellLineEnds.length;
+            endCell();
+        }
+
+        private void addLineEnd(final int lineEnd) {
+            ensureLineCapacity(lineCount + 1);
+            lineEnds[lineCount++] = lineEnd;
+        }
+
+        private void endCell() {
+            if(cellCount == cellEnds.length){
+                cellEnds = Arrays.copyOf(cellEnds, cellCount * 2);
+            }
+            cellEnds[cellCount++] = lineCount;
+            maxNumberOfLines = Math.max(maxNumberOfLines, getLineCount(cellCount - 1));
+        }
+
+        private void ensureLineCapacity(final int capacity) {
+            if(capacity > lineEnds.length){
+                lineEnds = Arrays.copyOf(lineEnds, Math.max(capacity, lineEnds.length * 2));
+            }
+        }
+
+        /**
+         * Remove all cells, the allocated arrays are kept to wrap the next cells.
+         */
+        public void clear() {
+            lineCount = 0;
+            cellCount = 0;
+            maxNumberOfLines = 0;
+        }
+
+        /**
+         * @return the number of cells.
+         */
+        public int getCellCount() {
+            return cellCount;
+        }
+
+        /**
+         * @param cell, the index of the cell.
+         * @return the number of lines of the cell.
+         */
+        public int getLineCount(final int cell) {
+            return cellEnds[cell] - getFirstLine(cell);
+        }
+
+        /**
+         * @param cell, the index of the cell.
+         * @param line, the index of the line within the cell.
+         * @return the start offset (inclusive) of the line within the text of the cell.
+         */
+        public int getLineStart(final int cell, final int line) {
+            return line == 0 ? 0 : lineEnds[getFirstLine(cell) + line - 1];
+        }
+
+        /**
+         * @param cell, the index of the cell.
+         * @param line, the index of the line within the cell.
+         * @return the end offset (exclusive) of the line within the text of the cell.
+         */
+        public int getLineEnd(final int cell, final int line) {
+            return lineEnds[getFirstLine(cell) + line];
+        }
+
+        /**
+         * @param cell, the index of the cell.
+         * @return a copy of the end offsets of the lines of the cell.
+         */
+        public int[] getLineEnds(final int cell) {
+            return Arrays.copyOfRange(lineEnds, getFirstLine(cell), cellEnds[cell]);
+        }
+
+        /**
+         * @return the number of lines of the cell which was split the most.
+         */
+        public int getMaxNumberOfLines() {
+            return maxNumberOfLines;
+        }
+
+        private int getFirstLine(final int cell) {
+            return cell == 0 ? 0 : cellEnds[cell - 1];
+        }
+    }
 }
@@ -0,0 +1,86 @@
+package com.viae.common.pdf.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.BitSet;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDFontDescriptorDictionary;
+import org.apache.pdfbox.pdmodel.font.PDTrueTypeFont;
+import org.junit.Test;
+
+public class EmbeddedFontTest {
+    private static final File FONT_FILE = new File("src/test/resources/fonts/DejaVuSansMono.ttf");
+    private static final File PROPORTIONAL_FONT_FILE = new File("src/test/resources/fonts/DejaVuSans.ttf");
+
+    @Test
+    public void fontFileShouldBeParsedOnce() {
+        assertSame(EmbeddedFont.load(FONT_FILE), EmbeddedFont.load(new File("src/test/resources/../resources/fonts/DejaVuSansMono.ttf")));
+    }
+
+    @Test
+    public void registeredFontShouldBeFoundByName() {
+        final EmbeddedFont font = EmbeddedFont.register("DejaVu Mono", FONT_FILE);
+
+        assertSame(font, EmbeddedFont.forName("DejaVu Mono"));
+        assertNull(EmbeddedFont.forName("unknown"));
+        assertEquals("DejaVuSansMono", font.getName());
+    }
+
+    @Test
+    public void metricsShouldBeReadFromTheFontProgram() {
+        final EmbeddedFont font = EmbeddedFont.load(FONT_FILE);
+
+        //a mono spaced font: every glyph has the same advance width (1233 units of 2048 per em)
+        assertEquals(1233 * 1000f / 2048, font.getGlyphWidthTable().getWidth('i'), 0.01f);
+        assertEquals(font.getGlyphWidthTable().getWidth('i'), font.getGlyphWidthTable().getWidth('W'), 0.01f);
+        assertTrue(font.getBoundingBoxHeight() > 1000);
+    }
+
+    @Test
+    public void metricsShouldFollowTheWinAnsiEncoding() throws Throwable {
+        final GlyphWidthTable widths = EmbeddedFont.load(PROPORTIONAL_FONT_FILE).getGlyphWidthTable();
+
+        assertTrue(widths.getWidth('i') < widths.getWidth('W'));
+        try(final PDDocument document = new PDDocument()){
+            final PDFont expected = PDTrueTypeFont.loadTTF(document, PROPORTIONAL_FONT_FILE);
+            //the font dictionary is WinAnsi encoded, e.g. code 0x80 is the euro sign and not the unicode control character
+            for(int code = ' '; code < 256; code++){
+                assertEquals("width of code " + code, expected.getFontWidth(new byte[]{(byte) code}, 0, 1), widths.getWidth((char) code), 0.5f);
+            }
+        }
+    }
+
+    @Test
+    public void subsetShouldOnlyContainTheUsedGlyphs() throws Throwable {
+        final EmbeddedFont font = EmbeddedFont.load(FONT_FILE);
+        final BitSet characters = new BitSet();
+        for(final char character : "Hello world".toCharArray()){
+            characters.set(character);
+        }
+
+        try(final PDDocument document = new PDDocument()){
+            final PDFont subset = font.embedSubset(document, characters);
+
+            assertTrue(subset instanceof PDTrueTypeFont);
+            assertTrue(subset.getBaseFont().matches("[A-Z]{6}\\+DejaVuSansMono"));
+            final PDFontDescriptorDictionary descriptor = (PDFontDescriptorDictionary) subset.getFontDescriptor();
+            assertEquals(subset.getBaseFont(), descriptor.getFontName());
+            final int subsetSize = descriptor.getFontFile2().getStream().getInt(COSName.LENGTH1);
+            assertTrue(subsetSize > 0);
+            assertTrue(subsetSize < FONT_FILE.length() / 20);
+            assertEquals(font.getGlyphWidthTable().getWidth('H'), subset.getFontWidth(new byte[]{'H'}, 0, 1), 0.5f);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingFontFileShouldFail() {
+        EmbeddedFont.load(new File("src/test/resources/fonts/missing.ttf"));
+    }
+}
@@ -0,0 +1,49 @@
+package com.viae.common.pdf.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.Test;
+
+public class GlyphWidthTableTest {
+
+    @Test
+    public void courierShouldBeMonospaced() {
+        final GlyphWidthTable table = FontFamily.COURIER.getGlyphWidthTable();
+        assertEquals(600f, table.getWidth('i'), 0f);
+        assertEquals(600f, table.getWidth('W'), 0f);
+        assertEquals(600f * 4, table.getWidth("test", 0, 4), 0f);
+    }
+
+    @Test
+    public void helveticaShouldUseProportionalWidths() throws Throwable {
+        final GlyphWidthTable table = FontFamily.HELVETICA.getGlyphWidthTable();
+        assertTrue(table.getWidth('i') < table.getWidth('W'));
+        assertEquals(PDType1Font.HELVETICA.getStringWidth("Maarten Vandeperre"), table.getWidth("Maarten Vandeperre", 0, 18), 0.001f);
+    }
+
+    @Test
+    public void widthOfRangeShouldOnlyMeasureTheRange() {
+        final GlyphWidthTable table = FontFamily.HELVETICA.getGlyphWidthTable();
+        assertEquals(table.getWidth('b') + table.getWidth('c'), table.getWidth("abcd", 1, 3), 0f);
+        assertEquals(0f, table.getWidth("abcd", 2, 2), 0f);
+    }
+
+    @Test
+    public void charactersOutsideTheTableShouldUseTheAverageWidth() throws Throwable {
+        final GlyphWidthTable table = FontFamily.HELVETICA.getGlyphWidthTable();
+        assertEquals(PDType1Font.HELVETICA.getAverageFontWidth(), table.getWidth('\u20ac'), 0f);
+    }
+
+    @Test
+    public void tableShouldBeCreatedOncePerFontFamily() {
+        assertSame(FontFamily.HELVETICA_BOLD.getGlyphWidthTable(), FontFamily.HELVETICA_BOLD.getGlyphWidthTable());
+    }
+
+    @Test
+    public void scaleShouldConvertGlyphSpaceToFontSize() {
+        assertEquals(0.01f, GlyphWidthTable.getScale(10), 0f);
+    }
+}
@@ -1,6 +1,16 @@
 package com.viae.common.pdf.model;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 
@@ -8,6 +18,9 @@ import test.config.PojoTester;
 
 public class PdfContextTest {
 
+    private static final int THREAD_COUNT = 16;
+    private static final int ITERATIONS = 10000;
+
     @Test
     public void coverage() {
         assertNotNull(new PdfContext.Builder.LazyInit());
@@ -18,4 +31,62 @@ public class PdfContextTest {
         PojoTester.test(PdfContext.class);
     }
 
+    @Test
+    public void builderShouldBeConfinedToTheCallingThread() throws Throwable {
+        final PdfContext.Builder builder = PdfContext.builder();
+        final Callable<PdfContext.Builder> otherThread = new Callable<PdfContext.Builder>() {
+            @Override
+            public PdfContext.Builder call() {
+                return PdfContext.builder();
+            }
+        };
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try{
+            assertNotSame(builder, executor.submit(otherThread).get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void concurrentBuildersShouldNotInterfere() throws Throwable {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        final List<Future<Integer>> results = new ArrayList<>();
+        try{
+            for(int i = 0; i < THREAD_COUNT; i++){
+                final float threadValue = i + 1;
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        startSignal.await();
+                        int built = 0;
+                        PdfContext previous = PdfContext.builder().create().build();
+                        for(int j = 0; j < ITERATIONS; j++){
+                            final PdfContext context = PdfContext.builder()
+                                    .deepCopy(previous)
+                                    .fontFamily(FontFamily.values()[(int) threadValue % FontFamily.values().length])
+                                    .fontSize(threadValue)
+                                    .marginLeft(threadValue)
+                                    .cellMarginTop(j)
+                                    .build();
+                            assertEquals(threadValue, context.getFontSize(), 0f);
+                            assertEquals(threadValue, context.getMarginLeft(), 0f);
+                            assertEquals(j, context.getCellMarginTop(), 0f);
+                            assertEquals(j == 0 ? 0f : j - 1, previous.getCellMarginTop(), 0f);
+                            previous = context;
+                            built++;
+                        }
+                        return built;
+                    }
+                }));
+            }
+            startSignal.countDown();
+            for(final Future<Integer> result : results){
+                assertEquals(Integer.valueOf(ITERATIONS), result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
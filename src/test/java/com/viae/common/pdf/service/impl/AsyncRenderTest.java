@@ -0,0 +1,170 @@
+package com.viae.common.pdf.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.util.PDFTextStripper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.viae.common.pdf.model.FontFamily;
+import com.viae.common.pdf.model.PdfContext;
+import com.viae.common.pdf.service.impl.PdfBuilder.PageSize;
+
+public class AsyncRenderTest {
+    private static final CompiledTemplate TEMPLATE = CompiledTemplate.compile("conf|font_family|HELVETICA|EOL|\nconf|font_size|10|EOL|\n"
+            + "text|" + DefaultString.LOREM_IPSUM + "|EOL|\n"
+            + "table_row|name|maarten vandeperre|EOL|\n");
+
+    private static final JavaPdfBuilder.BuilderClient NEXT_CLIENT = new JavaPdfBuilder.BuilderClient() {
+        @Override
+        public void whenBuilding(final JavaPdfBuilder builder) {
+            builder.setContext(PdfContext.builder().create().fontFamily(FontFamily.HELVETICA).fontSize(10).build());
+            builder.writeText("next");
+        }
+    };
+
+    private ExecutorService cpuExecutor;
+    private ExecutorService ioExecutor;
+
+    @Before
+    public void setupFreshFixture(){
+        cpuExecutor = Executors.newSingleThreadExecutor(named("cpu"));
+        ioExecutor = Executors.newSingleThreadExecutor(named("io"));
+    }
+
+    @After
+    public void tearDown(){
+        cpuExecutor.shutdownNow();
+        ioExecutor.shutdownNow();
+    }
+
+    @Test
+    public void asyncRenderShouldMatchTheBlockingRender() throws Throwable {
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new StringPdfBuilder().buildPdf(TEMPLATE, PageSize.A4, PdfOutput.toStream(expected));
+
+        final StringPdfBuilder builder = new StringPdfBuilder();
+        for(final boolean streaming : new boolean[]{false, true}){
+            builder.setStreaming(streaming);
+            final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            final RenderResult result = builder.buildPdfAsync(TEMPLATE, PageSize.A4, PdfOutput.toStream(stream), cpuExecutor, ioExecutor).get();
+
+            assertEquals(1, result.getPageCount());
+            assertEquals(stream.size(), result.getBytesWritten());
+            assertEquals(getText(expected.toByteArray()), getText(stream.toByteArray()));
+        }
+    }
+
+    @Test
+    public void layoutAndSaveShouldRunOnTheirExecutors() throws Throwable {
+        final AtomicReference<String> layoutThread = new AtomicReference<>();
+        final AtomicReference<String> saveThread = new AtomicReference<>();
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream(){
+            @Override
+            public synchronized void write(final byte[] b, final int off, final int len) {
+                saveThread.set(Thread.currentThread().getName());
+                super.write(b, off, len);
+            }
+        };
+
+        new JavaPdfBuilder().buildPdfAsync(new JavaPdfBuilder.BuilderClient() {
+            @Override
+            public void whenBuilding(final JavaPdfBuilder builder) {
+                layoutThread.set(Thread.currentThread().getName());
+                builder.setContext(PdfContext.builder().create().fontFamily(FontFamily.HELVETICA).fontSize(10).build());
+                builder.writeText("async");
+            }
+        }, PageSize.A4, PdfOutput.toStream(stream), cpuExecutor, ioExecutor).get();
+
+        assertEquals("cpu", layoutThread.get());
+        assertEquals("io", saveThread.get());
+    }
+
+    @Test
+    public void cancellationShouldAbortTheLayout() throws Throwable {
+        final CountDownLatch firstPage = new CountDownLatch(1);
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final AtomicReference<Integer> writtenLines = new AtomicReference<>();
+        final JavaPdfBuilder builder = new JavaPdfBuilder();
+        final CompletableFuture<RenderResult> result = builder.buildPdfAsync(new JavaPdfBuilder.BuilderClient() {
+            @Override
+            public void whenBuilding(final JavaPdfBuilder builder) {
+                builder.setContext(PdfContext.builder().create().fontFamily(FontFamily.HELVETICA).fontSize(10).build());
+                int lines = 0;
+                try{
+                    for(; lines < 10000; lines++){
+                        if(lines == 100){
+                            firstPage.countDown();
+                            cancelled.await();
+                        }
+                        builder.writeText("line " + lines);
+                    }
+                } catch(final InterruptedException e){
+                    Thread.currentThread().interrupt();
+                } finally {
+                    writtenLines.set(lines);
+                }
+            }
+        }, PageSize.A4, PdfOutput.toStream(stream), cpuExecutor, ioExecutor);
+
+        firstPage.await();
+        assertTrue(result.cancel(true));
+        try{
+            result.get();
+            fail("the rendering is cancelled");
+        } catch(final CancellationException e){
+            //expected
+        }
+        //the layout is still in progress, the builder stays busy until it stops
+        assertFalse(builder.whenAsyncRenderStopped().toCompletableFuture().isDone());
+        try{
+            builder.buildPdfAsync(NEXT_CLIENT, PageSize.A4, PdfOutput.toStream(new ByteArrayOutputStream()), cpuExecutor, ioExecutor);
+            fail("the builder is still laying out the cancelled document");
+        } catch(final IllegalStateException e){
+            //expected
+        }
+        cancelled.countDown();
+        builder.whenAsyncRenderStopped().toCompletableFuture().get(10, TimeUnit.SECONDS);
+
+        //the layout stopped at the next page, nothing is written
+        assertTrue(writtenLines.get() < 200);
+        assertEquals(0, stream.size());
+        //the builder is released
+        final ByteArrayOutputStream next = new ByteArrayOutputStream();
+        assertEquals(1, builder.buildPdfAsync(NEXT_CLIENT, PageSize.A4, PdfOutput.toStream(next), cpuExecutor, ioExecutor).get().getPageCount());
+        assertTrue(builder.whenAsyncRenderStopped().toCompletableFuture().isDone());
+    }
+
+    private static ThreadFactory named(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(runnable, name);
+            }
+        };
+    }
+
+    private static String getText(final byte[] pdf) throws IOException {
+        try(final PDDocument document = PDDocument.load(new ByteArrayInputStream(pdf))){
+            return new PDFTextStripper().getText(document);
+        }
+    }
+}
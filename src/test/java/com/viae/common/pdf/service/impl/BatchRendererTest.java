@@ -0,0 +1,179 @@
+package com.viae.common.pdf.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.util.PDFTextStripper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.viae.common.pdf.service.impl.PdfBuilder.PageSize;
+
+public class BatchRendererTest {
+
+    private static final CompiledTemplate TEMPLATE = CompiledTemplate.compile("conf|font_family|HELVETICA|EOL|\nconf|font_size|10|EOL|\n"
+            + "text|" + DefaultString.LOREM_IPSUM + "|EOL|\n"
+            + "table_row|name|maarten vandeperre|EOL|\n");
+    private static final CompiledTemplate MISSING_IMAGE_TEMPLATE = CompiledTemplate.compile("img|does/not/exist.png|png|EOL|\n");
+
+    private ExecutorService executor;
+
+    @Before
+    public void setupFreshFixture(){
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown(){
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void allJobsShouldBeRendered() throws Throwable {
+        final List<ByteArrayOutputStream> outputs = new ArrayList<>();
+        final List<RenderJob> jobs = new ArrayList<>();
+        for(int i = 0; i < 100; i++){
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            outputs.add(output);
+            jobs.add(RenderJob.of("job" + i, TEMPLATE, PageSize.A4, PdfOutput.toStream(output)));
+        }
+        final BatchRenderer renderer = new BatchRenderer(executor, 8);
+        renderer.setImageCache(new ImageCache(64 * 1024 * 1024));
+
+        final BatchResult result = renderer.render(jobs.iterator());
+
+        assertEquals(100, result.getJobCount());
+        assertEquals(100, result.getSuccessCount());
+        assertTrue(result.getFailures().isEmpty());
+        long totalSize = 0;
+        for(final ByteArrayOutputStream output : outputs){
+            assertTrue(output.size() > 0);
+            totalSize += output.size();
+        }
+        assertEquals(totalSize, result.getBytesWritten());
+        assertTrue(result.getDocumentsPerSecond() > 0);
+    }
+
+    @Test
+    public void jobsShouldBindTheirOwnData() throws Throwable {
+        final CompiledTemplate template = CompiledTemplate.compile("conf|font_family|HELVETICA|EOL|\nconf|font_size|10|EOL|\n"
+                + "text|payslip of ${employee.name}|EOL|\n");
+        final ByteArrayOutputStream first = new ByteArrayOutputStream();
+        final ByteArrayOutputStream second = new ByteArrayOutputStream();
+        final List<RenderJob> jobs = new ArrayList<>();
+        jobs.add(RenderJob.of("first", template, Collections.singletonMap("employee", Collections.singletonMap("name", "maarten")), PageSize.A4, PdfOutput.toStream(first)));
+        jobs.add(RenderJob.of("second", template, Collections.singletonMap("employee", Collections.singletonMap("name", "viae")), PageSize.A4, PdfOutput.toStream(second)));
+
+        final BatchResult result = new BatchRenderer(executor, 2).render(jobs.iterator());
+
+        assertEquals(2, result.getSuccessCount());
+        assertEquals("payslip of maarten", getText(first.toByteArray()).trim());
+        assertEquals("payslip of viae", getText(second.toByteArray()).trim());
+    }
+
+    @Test
+    public void failingJobShouldNotInfluenceOtherJobs() throws Throwable {
+        final List<RenderJob> jobs = new ArrayList<>();
+        jobs.add(RenderJob.of("ok1", TEMPLATE, PageSize.A4, PdfOutput.toStream(new ByteArrayOutputStream())));
+        jobs.add(RenderJob.of("broken", MISSING_IMAGE_TEMPLATE, PageSize.A4, PdfOutput.toStream(new ByteArrayOutputStream())));
+        jobs.add(RenderJob.of("ok2", TEMPLATE, PageSize.A4, PdfOutput.toStream(new ByteArrayOutputStream())));
+
+        final BatchResult result = new BatchRenderer(executor, 2).render(jobs.iterator());
+
+        assertEquals(3, result.getJobCount());
+        assertEquals(2, result.getSuccessCount());
+        assertEquals(1, result.getFailures().size());
+        assertEquals("broken", result.getFailures().get(0).getJobId());
+        assertTrue(result.getFailures().get(0).getCause() instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void jobsInProgressShouldBeLimited() throws Throwable {
+        final AtomicInteger inProgress = new AtomicInteger();
+        final AtomicInteger maxInProgress = new AtomicInteger();
+        final AtomicInteger taken = new AtomicInteger();
+        final Iterator<RenderJob> jobs = new Iterator<RenderJob>() {
+            @Override
+            public boolean hasNext() {
+                return taken.get() < 50;
+            }
+
+            @Override
+            public RenderJob next() {
+                taken.incrementAndGet();
+                return new CountingJob(inProgress, maxInProgress);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        final BatchResult result = new BatchRenderer(executor, 2).render(jobs);
+
+        assertEquals(50, result.getSuccessCount());
+        assertEquals(0, inProgress.get());
+        assertTrue(String.valueOf(maxInProgress.get()), maxInProgress.get() <= 2);
+    }
+
+    @Test
+    public void defaultExecutorShouldRenderJobs() throws Throwable {
+        final ExecutorService defaultExecutor = BatchRenderer.newDefaultExecutor();
+        try{
+            final List<RenderJob> jobs = new ArrayList<>();
+            for(int i = 0; i < 10; i++){
+                jobs.add(RenderJob.of("job" + i, TEMPLATE, PageSize.A4, PdfOutput.toStream(new ByteArrayOutputStream())));
+            }
+            assertEquals(10, new BatchRenderer(defaultExecutor, 4).render(jobs.iterator()).getSuccessCount());
+        } finally {
+            defaultExecutor.shutdownNow();
+        }
+    }
+
+    private static String getText(final byte[] pdf) throws IOException {
+        try(final PDDocument document = PDDocument.load(new ByteArrayInputStream(pdf))){
+            return new PDFTextStripper().getText(document);
+        }
+    }
+
+    private static final class CountingJob extends RenderJob {
+        private final AtomicInteger inProgress;
+        private final AtomicInteger maxInProgress;
+
+        private CountingJob(final AtomicInteger inProgress, final AtomicInteger maxInProgress) {
+            super("counting", PageSize.A4, PdfOutput.toStream(new ByteArrayOutputStream()));
+            this.inProgress = inProgress;
+            this.maxInProgress = maxInProgress;
+        }
+
+        @Override
+        long render(final BuilderPool builders) {
+            final int current = inProgress.incrementAndGet();
+            int max = maxInProgress.get();
+            while(current > max && !maxInProgress.compareAndSet(max, current)){
+                max = maxInProgress.get();
+            }
+            try {
+                Thread.sleep(2);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inProgress.decrementAndGet();
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.viae.common.pdf.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.util.PDFTextStripper;
+import org.junit.Test;
+
+import com.viae.common.pdf.model.FontFamily;
+import com.viae.common.pdf.model.PdfContext;
+import com.viae.common.pdf.service.impl.LayoutBox.TextBox;
+import com.viae.common.pdf.service.impl.PdfBuilder.PageSize;
+
+public class BuilderReuseTest {
+    private static final PdfContext SMALL = PdfContext.builder().create().fontFamily(FontFamily.HELVETICA).fontSize(10).build();
+    private static final PdfContext LARGE = PdfContext.builder().deepCopy(SMALL).fontSize(20).marginTop(100).build();
+
+    private static final JavaPdfBuilder.BuilderClient LARGE_CLIENT = new JavaPdfBuilder.BuilderClient() {
+        @Override
+        public void whenBuilding(final JavaPdfBuilder builder) {
+            builder.setContext(LARGE);
+            builder.writeText("large");
+        }
+    };
+
+    private static final JavaPdfBuilder.BuilderClient DEFAULT_CLIENT = new JavaPdfBuilder.BuilderClient() {
+        @Override
+        public void whenBuilding(final JavaPdfBuilder builder) {
+            builder.writeText("default");
+        }
+    };
+
+    @Test
+    public void contextShouldNotLeakIntoTheNextDocument() {
+        final JavaPdfBuilder builder = new JavaPdfBuilder();
+        builder.setContext(SMALL);
+        final DocumentLayout large = builder.layout(LARGE_CLIENT, PageSize.A4);
+        final DocumentLayout reused = builder.layout(DEFAULT_CLIENT, PageSize.A4);
+
+        final JavaPdfBuilder fresh = new JavaPdfBuilder();
+        fresh.setDefaultContext(SMALL);
+        final DocumentLayout expected = fresh.layout(DEFAULT_CLIENT, PageSize.A4);
+
+        assertTrue(getFirstY(large) < getFirstY(reused));
+        assertEquals(getFirstY(expected), getFirstY(reused), 0.001f);
+        assertEquals(SMALL, builder.getContext());
+    }
+
+    @Test
+    public void reusedBuilderShouldRenderTheSameDocuments() throws Throwable {
+        final CompiledTemplate template = CompiledTemplate.compile("conf|font_family|HELVETICA|EOL|\nconf|font_size|10|EOL|\n"
+                + "text|" + DefaultString.LOREM_IPSUM + "|EOL|\n"
+                + "table_row|name|maarten vandeperre|EOL|\n");
+        final StringPdfBuilder builder = new StringPdfBuilder();
+        final String first = getText(render(builder, template));
+        for(int i = 0; i < 10; i++){
+            assertEquals(first, getText(render(builder, template)));
+        }
+        assertEquals(first, getText(render(new StringPdfBuilder(), template)));
+    }
+
+    @Test
+    public void failedLayoutShouldReleaseTheBuilder() throws Throwable {
+        final JavaPdfBuilder builder = new JavaPdfBuilder();
+        builder.setDefaultContext(SMALL);
+        try{
+            builder.layout(new JavaPdfBuilder.BuilderClient() {
+                @Override
+                public void whenBuilding(final JavaPdfBuilder builder) {
+                    builder.setContext(LARGE);
+                    throw new IllegalArgumentException("broken client");
+                }
+            }, PageSize.A4);
+            fail("the layout should fail");
+        } catch(final IllegalArgumentException e){
+            assertEquals("broken client", e.getMessage());
+        }
+        assertEquals(SMALL, builder.getContext());
+
+        //another thread can take over the builder
+        final AtomicReference<DocumentLayout> layout = new AtomicReference<>();
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                layout.set(builder.layout(DEFAULT_CLIENT, PageSize.A4));
+            }
+        });
+        thread.start();
+        thread.join();
+        assertEquals(1, layout.get().getPageCount());
+    }
+
+    @Test
+    public void concurrentLayoutShouldBeDetected() throws Throwable {
+        final JavaPdfBuilder builder = new JavaPdfBuilder();
+        builder.setDefaultContext(SMALL);
+        final CountDownLatch layingOut = new CountDownLatch(1);
+        final CountDownLatch checked = new CountDownLatch(1);
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                builder.layout(new JavaPdfBuilder.BuilderClient() {
+                    @Override
+                    public void whenBuilding(final JavaPdfBuilder builder) {
+                        layingOut.countDown();
+                        builder.writeText("first");
+                        try{
+                            checked.await();
+                        } catch(final InterruptedException e){
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }, PageSize.A4);
+            }
+        });
+        thread.start();
+        layingOut.await();
+        try{
+            builder.layout(DEFAULT_CLIENT, PageSize.A4);
+            fail("the builder is in use by another thread");
+        } catch(final IllegalStateException e){
+            //expected
+        }
+        try{
+            builder.setContext(LARGE);
+            fail("the builder is in use by another thread");
+        } catch(final IllegalStateException e){
+            //expected
+        }
+        try{
+            builder.reset();
+            fail("the builder is in use by another thread");
+        } catch(final IllegalStateException e){
+            //expected
+        } finally {
+            checked.countDown();
+        }
+        thread.join();
+
+        //the builder is released by the other thread, with the context it was configured with
+        assertEquals(SMALL, builder.getContext());
+        assertEquals(1, builder.layout(DEFAULT_CLIENT, PageSize.A4).getPageCount());
+    }
+
+    @Test
+    public void pooledBuilderShouldNotKeepTheConfigurationOfTheReleasingJob() {
+        final BuilderPool pool = new BuilderPool(null);
+        final AtomicInteger rendered = new AtomicInteger();
+        final JavaPdfBuilder builder = pool.takeJavaPdfBuilder();
+        builder.setDefaultContext(LARGE);
+        builder.setRenderListener(new RenderListener() {
+            @Override
+            public void documentRendered(final RenderStatistics statistics) {
+                rendered.incrementAndGet();
+            }
+        });
+        builder.buildPdf(DEFAULT_CLIENT, PageSize.A4, PdfOutput.toStream(new ByteArrayOutputStream()));
+        assertEquals(1, rendered.get());
+        pool.release(builder);
+
+        final JavaPdfBuilder reused = pool.takeJavaPdfBuilder();
+        assertSame(builder, reused);
+        assertEquals(new JavaPdfBuilder().getContext(), reused.getContext());
+        reused.buildPdf(LARGE_CLIENT, PageSize.A4, PdfOutput.toStream(new ByteArrayOutputStream()));
+        assertEquals(1, rendered.get());
+        pool.release(reused);
+    }
+
+    private static float getFirstY(final DocumentLayout layout) {
+        return ((TextBox) layout.getPages().get(0).getBoxes().get(0)).getY();
+    }
+
+    private static byte[] render(final StringPdfBuilder builder, final CompiledTemplate template) {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        builder.buildPdf(template, PageSize.A4, PdfOutput.toStream(stream));
+        return stream.toByteArray();
+    }
+
+    private static String getText(final byte[] pdf) throws Exception {
+        try(final PDDocument document = PDDocument.load(new ByteArrayInputStream(pdf))){
+            return new PDFTextStripper().getText(document);
+        }
+    }
+}
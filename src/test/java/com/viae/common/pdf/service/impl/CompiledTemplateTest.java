@@ -0,0 +1,113 @@
+package com.viae.common.pdf.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.StringJoiner;
+
+import org.junit.Test;
+
+public class CompiledTemplateTest {
+
+    @Test
+    public void compileShouldCreateAnInstructionPerKnownContentLine() {
+        final StringJoiner joiner = new StringJoiner("\n");
+        joiner.add("conf|font_family|COURIER|EOL|");
+        joiner.add("conf|font_size|5|EOL|");
+        joiner.add("text|title|EOL|");
+        joiner.add("unknown|line|EOL|");
+        joiner.add("img|src/test/resources/schoonheidsspecialiste.png|png|25|EOL|");
+        joiner.add("table_row|name|maarten vandeperre|EOL|");
+        joiner.add("");
+
+        final CompiledTemplate template = CompiledTemplate.compile(joiner.toString());
+
+        assertEquals(5, template.size());
+        assertTrue(template.getInstructions().get(0) instanceof TemplateInstruction.ConfigInstruction);
+        assertTrue(template.getInstructions().get(2) instanceof TemplateInstruction.TextInstruction);
+        assertTrue(template.getInstructions().get(3) instanceof TemplateInstruction.ImageInstruction);
+        assertTrue(template.getInstructions().get(4) instanceof TemplateInstruction.TableInstruction);
+    }
+
+    @Test
+    public void consecutiveTableRowsShouldBeCompiledIntoOneTable() {
+        final StringJoiner joiner = new StringJoiner("\n");
+        joiner.add("table_row|name|maarten vandeperre|EOL|");
+        joiner.add("table_row|role|software engineer|EOL|");
+        joiner.add("table_row|company|VIAE|EOL|");
+        joiner.add("table_row|one column|EOL|");
+        joiner.add("text|title|EOL|");
+        joiner.add("table_row|name|maarten vandeperre|EOL|");
+        joiner.add("");
+
+        final CompiledTemplate template = CompiledTemplate.compile(joiner.toString());
+
+        assertEquals(4, template.size());
+        assertEquals(3, ((TemplateInstruction.TableInstruction) template.getInstructions().get(0)).getRowCount());
+        assertEquals(1, ((TemplateInstruction.TableInstruction) template.getInstructions().get(1)).getRowCount());
+        assertEquals(1, ((TemplateInstruction.TableInstruction) template.getInstructions().get(3)).getRowCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compileShouldFailOnRepeatedRowsWithDifferentColumnCounts() {
+        CompiledTemplate.compile("repeat|orders|order|EOL|\ntable_row|a|b|EOL|\ntable_row|a|EOL|\nend_repeat|EOL|\n");
+    }
+
+    @Test
+    public void repeatedSectionShouldBeCompiledIntoTheSurroundingTable() {
+        final StringJoiner joiner = new StringJoiner("\n");
+        joiner.add("table_row|product|amount|EOL|");
+        joiner.add("repeat|customer.orders|order|EOL|");
+        joiner.add("table_row|${order.product}|${order.amount}|EOL|");
+        joiner.add("table_row|${order.description}|-|EOL|");
+        joiner.add("end_repeat|EOL|");
+        joiner.add("table_row|total|${customer.total}|EOL|");
+        joiner.add("");
+
+        final CompiledTemplate template = CompiledTemplate.compile(joiner.toString());
+
+        //the header row, the repeated rows (counted once) and the total row
+        assertEquals(1, template.size());
+        assertEquals(4, ((TemplateInstruction.TableInstruction) template.getInstructions().get(0)).getRowCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compileShouldFailOnTextInARepeatedSection() {
+        CompiledTemplate.compile("repeat|orders|order|EOL|\ntext|title|EOL|\nend_repeat|EOL|\n");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compileShouldFailOnUnendedRepeatedSection() {
+        CompiledTemplate.compile("repeat|orders|order|EOL|\ntable_row|${order.product}|EOL|\n");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compileShouldFailOnInvalidPlaceholder() {
+        CompiledTemplate.compile("text|${customer..name}|EOL|\n");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void compileShouldFailOnUnsupportedConfig() {
+        CompiledTemplate.compile("conf|unknown|5|EOL|\n");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void compileShouldFailOnUnsupportedFontFamily() {
+        CompiledTemplate.compile("conf|font_family|TIMES|EOL|\n");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compileShouldFailOnInvalidTextLine() {
+        CompiledTemplate.compile("text|a|b|EOL|\n");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compileShouldFailOnInvalidImageLine() {
+        CompiledTemplate.compile("img|path|EOL|\n");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void instructionsShouldBeImmutable() {
+        CompiledTemplate.compile("text|title|EOL|\n").getInstructions().clear();
+    }
+}
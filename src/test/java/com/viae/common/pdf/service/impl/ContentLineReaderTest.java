@@ -0,0 +1,68 @@
+package com.viae.common.pdf.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class ContentLineReaderTest {
+
+    @Test
+    public void shouldSplitOnEndOfLineMarkers() throws Throwable {
+        final ContentLineReader reader = new ContentLineReader(new StringReader("conf|font_size|15|EOL|\ntext|title|EOL|\r\ntext|last|EOL|\n"));
+        assertEquals("conf|font_size|15", reader.readContentLine());
+        assertEquals("text|title", reader.readContentLine());
+        assertEquals("text|last", reader.readContentLine());
+        assertNull(reader.readContentLine());
+    }
+
+    @Test
+    public void shouldKeepLineBreaksWithoutMarker() throws Throwable {
+        final ContentLineReader reader = new ContentLineReader(new StringReader("text|first\nsecond|EOL|\n"));
+        assertEquals("text|first\nsecond", reader.readContentLine());
+        assertNull(reader.readContentLine());
+    }
+
+    @Test
+    public void shouldReturnRemainderWithoutLineBreak() throws Throwable {
+        final ContentLineReader reader = new ContentLineReader(new StringReader("text|first|EOL|\ntext|last|EOL|"));
+        assertEquals("text|first", reader.readContentLine());
+        assertEquals("text|last|EOL|", reader.readContentLine());
+        assertNull(reader.readContentLine());
+    }
+
+    @Test
+    public void shouldReturnNullForEmptyTemplate() throws Throwable {
+        assertNull(new ContentLineReader(new StringReader("")).readContentLine());
+    }
+
+    @Test
+    public void shouldReadMarkersSplitOverMultipleReads() throws Throwable {
+        final ContentLineReader reader = new ContentLineReader(new SingleCharReader("text|a|EOL|\r\ntext|b|EOL|\n"));
+        assertEquals("text|a", reader.readContentLine());
+        assertEquals("text|b", reader.readContentLine());
+        assertNull(reader.readContentLine());
+    }
+
+    private static final class SingleCharReader extends Reader {
+        private final Reader delegate;
+
+        private SingleCharReader(final String content) {
+            delegate = new StringReader(content);
+        }
+
+        @Override
+        public int read(final char[] buffer, final int offset, final int length) throws IOException {
+            return delegate.read(buffer, offset, Math.min(1, length));
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.viae.common.pdf.service.impl;
+
+import static com.viae.common.pdf.service.impl.TestDocuments.load;
+import static com.viae.common.pdf.service.impl.TestDocuments.paint;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectImage;
+import org.apache.pdfbox.util.PDFTextStripper;
+import org.junit.Test;
+
+import com.viae.common.pdf.model.FontFamily;
+import com.viae.common.pdf.model.PdfContext;
+import com.viae.common.pdf.service.impl.LayoutBox.ImageBox;
+import com.viae.common.pdf.service.impl.LayoutBox.PathBox;
+import com.viae.common.pdf.service.impl.LayoutBox.TextBox;
+import com.viae.common.pdf.service.impl.PdfBuilder.ImageType;
+import com.viae.common.pdf.service.impl.PdfBuilder.PageSize;
+
+public class DocumentLayoutTest {
+    private static final int PARAGRAPHS = 200;
+    private static final float MARGIN = 20;
+
+    private static final JavaPdfBuilder.BuilderClient CLIENT = new JavaPdfBuilder.BuilderClient() {
+        @Override
+        public void whenBuilding(final JavaPdfBuilder builder) {
+            builder.setContext(PdfContext.builder()
+                    .create()
+                    .fontFamily(FontFamily.HELVETICA)
+                    .fontSize(10)
+                    .marginTop(MARGIN)
+                    .marginBottom(MARGIN)
+                    .build());
+            for(int i = 0; i < PARAGRAPHS; i++){
+                builder.writeText("paragraph " + i + " " + DefaultString.LOREM_IPSUM);
+            }
+            builder.writeTable(new String[][]{{"name", "maarten vandeperre"}, {"company", "VIAE"}});
+        }
+    };
+
+    @Test
+    public void pageCountShouldBeKnownBeforePainting() throws Throwable {
+        final JavaPdfBuilder builder = new JavaPdfBuilder();
+        final DocumentLayout layout = builder.layout(CLIENT, PageSize.A4);
+        assertTrue(layout.getPageCount() > 1);
+
+        try(final PDDocument document = load(paint(builder, layout))){
+            assertEquals(layout.getPageCount(), document.getNumberOfPages());
+        }
+    }
+
+    @Test
+    public void layoutShouldBePaintableMultipleTimes() throws Throwable {
+        final JavaPdfBuilder builder = new JavaPdfBuilder();
+        final DocumentLayout layout = builder.layout(CLIENT, PageSize.A4);
+
+        try(final PDDocument first = load(paint(builder, layout));
+                final PDDocument second = load(paint(new JavaPdfBuilder(), layout))){
+            final String text = new PDFTextStripper().getText(first);
+            assertTrue(text.contains("paragraph " + (PARAGRAPHS - 1)));
+            assertEquals(text, new PDFTextStripper().getText(second));
+        }
+    }
+
+    @Test
+    public void textShouldBeLaidOutTopDownWithinTheMargins() {
+        final DocumentLayout layout = new JavaPdfBuilder().layout(CLIENT, PageSize.A4);
+
+        int textBoxes = 0;
+        int pathBoxes = 0;
+        for(final PageLayout page : layout.getPages()){
+            float previousY = page.getHeight();
+            for(final LayoutBox box : page.getBoxes()){
+                if(box instanceof TextBox){
+                    final TextBox textBox = (TextBox) box;
+                    //the cells of a table row share their y position
+                    assertTrue(textBox.getY() <= previousY);
+                    assertTrue(textBox.getY() >= MARGIN);
+                    previousY = textBox.getY();
+                    textBoxes++;
+                } else if(box instanceof PathBox){
+                    //2 rows (3 row lines) of 2 columns (3 column lines)
+                    assertEquals(6, ((PathBox) box).getLineCount());
+                    pathBoxes++;
+                }
+            }
+        }
+        assertTrue(textBoxes > PARAGRAPHS * 4);
+        assertEquals(1, pathBoxes);
+    }
+
+    @Test
+    public void lineHeightShouldFollowTheContext() {
+        final PdfContext small = PdfContext.builder().create().fontFamily(FontFamily.HELVETICA).fontSize(10).build();
+        final PdfContext large = PdfContext.builder().deepCopy(small).fontSize(20).build();
+        final DocumentLayout layout = new JavaPdfBuilder().layout(new JavaPdfBuilder.BuilderClient() {
+            @Override
+            public void whenBuilding(final JavaPdfBuilder builder) {
+                builder.setContext(small);
+                builder.writeText("small 1");
+                builder.writeText("small 2");
+                builder.setContext(large);
+                builder.writeText("large 1");
+                builder.writeText("large 2");
+                builder.setContext(PdfContext.builder().deepCopy(large).marginLeft(10).build());
+                builder.writeText("large 3");
+            }
+        }, PageSize.A4);
+
+        final List<LayoutBox> boxes = layout.getPages().get(0).getBoxes();
+        final float smallLineHeight = getY(boxes, 0) - getY(boxes, 1);
+        final float largeLineHeight = getY(boxes, 2) - getY(boxes, 3);
+        assertEquals(smallLineHeight * 2, largeLineHeight, 0.001f);
+        assertEquals(largeLineHeight, getY(boxes, 3) - getY(boxes, 4), 0.001f);
+    }
+
+    @Test
+    public void imageShouldBeScaledToTheMaxWidth() {
+        final File image = new File("src/test/resources/schoonheidsspecialiste.png");
+        final DocumentLayout layout = new JavaPdfBuilder().layout(new JavaPdfBuilder.BuilderClient() {
+            @Override
+            public void whenBuilding(final JavaPdfBuilder builder) {
+                builder.writeImage(image, ImageType.OTHER, 100);
+            }
+        }, PageSize.A4);
+
+        final ImageBox imageBox = (ImageBox) layout.getPages().get(0).getBoxes().get(0);
+        assertEquals(1, layout.getPageCount());
+        assertEquals(100f * 2103 / 4961, imageBox.getHeight(), 0.01f);
+    }
+
+    @Test
+    public void imageShouldBeDownsampledToTheTargetResolution() throws Throwable {
+        final File image = new File("src/test/resources/schoonheidsspecialiste.png");
+        final JavaPdfBuilder builder = new JavaPdfBuilder();
+        builder.setImageDownsampling(144, 0.8f);
+        final DocumentLayout layout = builder.layout(new JavaPdfBuilder.BuilderClient() {
+            @Override
+            public void whenBuilding(final JavaPdfBuilder builder) {
+                builder.writeImage(image, ImageType.OTHER, 100);
+            }
+        }, PageSize.A4);
+
+        final ImageBox imageBox = (ImageBox) layout.getPages().get(0).getBoxes().get(0);
+        assertEquals(100f * 2103 / 4961, imageBox.getHeight(), 0.01f);
+        try(final PDDocument document = load(paint(builder, layout))){
+            final PDPage page = (PDPage) document.getDocumentCatalog().getAllPages().get(0);
+            final PDXObjectImage embedded = (PDXObjectImage) page.getResources().getXObjects().values().iterator().next();
+            //100 points is 1.39 inch, 200 pixels at 144 dpi
+            assertEquals(200, embedded.getWidth());
+            assertEquals(Math.round(200f * 2103 / 4961), embedded.getHeight());
+        }
+    }
+
+    private static float getY(final List<LayoutBox> boxes, final int index) {
+        return ((TextBox) boxes.get(index)).getY();
+    }
+}
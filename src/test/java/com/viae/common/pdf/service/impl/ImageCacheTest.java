@@ -0,0 +1,114 @@
+package com.viae.common.pdf.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import javax.imageio.ImageIO;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDJpeg;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDPixelMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.viae.common.pdf.service.impl.ImageCache.ImageData;
+import com.viae.common.pdf.service.impl.ImageCache.ImageKey;
+import com.viae.common.pdf.service.impl.PdfBuilder.ImageType;
+
+public class ImageCacheTest {
+
+    private static final File IMAGE = new File("src/test/resources/schoonheidsspecialiste.png");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void imageShouldBeLoadedOnce() throws Throwable {
+        final ImageCache cache = new ImageCache(Long.MAX_VALUE);
+        final ImageData first = cache.load(IMAGE, ImageType.OTHER);
+        assertSame(first, cache.load(IMAGE, ImageType.OTHER));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(first.getSize(), cache.getSize());
+    }
+
+    @Test
+    public void leastRecentlyUsedImageShouldBeEvicted() throws Throwable {
+        final File first = createImage("first.png", 10, 10);
+        final File second = createImage("second.png", 10, 10);
+        final ImageCache cache = new ImageCache(10 * 10 * 4 + 1);
+
+        final ImageData firstData = cache.load(first, ImageType.OTHER);
+        cache.load(second, ImageType.OTHER);
+        assertEquals(10 * 10 * 4, cache.getSize());
+        assertNotSame(firstData, cache.load(first, ImageType.OTHER));
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void imagesLargerThanTheCacheShouldNotBeCached() throws Throwable {
+        final ImageCache cache = new ImageCache(1);
+        cache.load(IMAGE, ImageType.OTHER);
+        cache.load(IMAGE, ImageType.OTHER);
+        assertEquals(0, cache.getSize());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void changedFileShouldBeLoadedAgain() throws Throwable {
+        final File image = createImage("image.png", 10, 10);
+        final ImageCache cache = new ImageCache(Long.MAX_VALUE);
+        cache.load(image, ImageType.OTHER);
+        ImageIO.write(new BufferedImage(20, 20, BufferedImage.TYPE_INT_RGB), "png", image);
+        image.setLastModified(image.lastModified() + 1000);
+        cache.load(image, ImageType.OTHER);
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void downsampledImageShouldBeCachedPerSize() throws Throwable {
+        final File image = createImage("image.png", 400, 200);
+        final ImageCache cache = new ImageCache(Long.MAX_VALUE);
+        final ImageData original = cache.load(image, ImageType.OTHER);
+        final ImageKey key = new ImageKey(image, ImageType.OTHER);
+
+        final ImageData downsampled = cache.downsample(key.downsampled(100, 50, 0.8f), original);
+        assertSame(downsampled, cache.downsample(key.downsampled(100, 50, 0.8f), original));
+        assertNotSame(downsampled, cache.downsample(key.downsampled(60, 30, 0.8f), original));
+        assertEquals(100, downsampled.getWidth());
+        assertEquals(50, downsampled.getHeight());
+        try(final PDDocument document = new PDDocument()){
+            assertTrue(downsampled.createXObject(document) instanceof PDJpeg);
+        }
+    }
+
+    @Test
+    public void transparentImageShouldBeDownsampledLossless() throws Throwable {
+        final BufferedImage transparent = new BufferedImage(400, 200, BufferedImage.TYPE_INT_ARGB);
+        final File image = folder.newFile("transparent.png");
+        ImageIO.write(transparent, "png", image);
+        final ImageData downsampled = ImageData.read(image, ImageType.OTHER).downsample(new ImageKey(image, ImageType.OTHER).downsampled(100, 50, 0.8f));
+
+        assertEquals(100, downsampled.getWidth());
+        try(final PDDocument document = new PDDocument()){
+            assertTrue(downsampled.createXObject(document) instanceof PDPixelMap);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxSizeShouldBePositive() {
+        new ImageCache(0);
+    }
+
+    private File createImage(final String name, final int width, final int height) throws Throwable {
+        final File file = folder.newFile(name);
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", file);
+        return file;
+    }
+}
@@ -0,0 +1,145 @@
+package com.viae.common.pdf.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.viae.common.pdf.service.impl.ImageCache.ImageData;
+import com.viae.common.pdf.service.impl.ImageCache.ImageKey;
+import com.viae.common.pdf.service.impl.LayoutBox.ImageBox;
+import com.viae.common.pdf.service.impl.PdfBuilder.ImageType;
+import com.viae.common.pdf.service.impl.PdfBuilder.PageSize;
+
+public class ImagePrefetcherTest {
+    private static final File IMAGE = new File("src/test/resources/schoonheidsspecialiste.png");
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void onlyTheMaxNumberOfImagesShouldBeLoadedAhead() throws Throwable {
+        final ManualExecutor executor = new ManualExecutor();
+        final ImagePrefetcher prefetcher = new ImagePrefetcher(executor, 2);
+        final ImageKey[] keys = new ImageKey[4];
+        final ImageData image = ImageData.read(IMAGE, ImageType.OTHER);
+        for(int i = 0; i < keys.length; i++){
+            keys[i] = new ImageKey(copy(i), ImageType.OTHER);
+            prefetcher.request(keys[i], loader(image));
+        }
+        //requesting an image twice doesn't load it twice
+        prefetcher.request(keys[0], loader(image));
+        assertEquals(2, executor.tasks.size());
+
+        executor.runAll();
+        assertSame(image, prefetcher.take(keys[0]));
+        assertEquals(1, executor.tasks.size());
+
+        //an image the layout reaches before it is loading is loaded by the layout
+        assertNull(prefetcher.take(keys[3]));
+        assertEquals(1, executor.tasks.size());
+
+        prefetcher.clear();
+        assertNull(prefetcher.take(keys[1]));
+    }
+
+    @Test
+    public void prefetchedTemplateShouldRenderTheSameImages() throws Throwable {
+        final StringBuilder template = new StringBuilder("conf|font_family|HELVETICA|EOL|\nconf|font_size|10|EOL|\n");
+        for(int i = 0; i < 4; i++){
+            template.append("text|product ").append(i).append("|EOL|\n");
+            template.append("img|").append(copy(i).getPath()).append("|png|100|EOL|\n");
+        }
+        final CompiledTemplate compiled = CompiledTemplate.compile(template.toString());
+        final ExecutorService pool = Executors.newFixedThreadPool(2);
+        try{
+            final CountingExecutor executor = new CountingExecutor(pool);
+            final StringPdfBuilder builder = new StringPdfBuilder();
+            builder.setImagePrefetch(executor, 2);
+            final DocumentLayout expected = new StringPdfBuilder().layout(compiled, PageSize.A4);
+            final DocumentLayout prefetched = builder.layout(compiled, PageSize.A4);
+
+            assertEquals(4, executor.count.get());
+            assertEquals(expected.getPageCount(), prefetched.getPageCount());
+            final List<LayoutBox> expectedBoxes = expected.getPages().get(0).getBoxes();
+            final List<LayoutBox> prefetchedBoxes = prefetched.getPages().get(0).getBoxes();
+            assertEquals(expectedBoxes.size(), prefetchedBoxes.size());
+            for(int i = 0; i < expectedBoxes.size(); i++){
+                if(expectedBoxes.get(i) instanceof ImageBox){
+                    assertEquals(((ImageBox) expectedBoxes.get(i)).getHeight(), ((ImageBox) prefetchedBoxes.get(i)).getHeight(), 0.001f);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingImageShouldStillFail() {
+        final StringPdfBuilder builder = new StringPdfBuilder();
+        builder.setImagePrefetch(new ManualExecutor(), 2);
+        builder.layout(CompiledTemplate.compile("img|does/not/exist.png|png|EOL|\n"), PageSize.A4);
+    }
+
+    private File copy(final int index) throws IOException {
+        final File copy = new File(folder.getRoot(), "image" + index + ".png");
+        if(!copy.exists()){
+            Files.copy(IMAGE.toPath(), copy.toPath());
+        }
+        return copy;
+    }
+
+    private static Callable<ImageData> loader(final ImageData image) {
+        return new Callable<ImageData>() {
+            @Override
+            public ImageData call() {
+                return image;
+            }
+        };
+    }
+
+    private static final class ManualExecutor implements Executor {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(final Runnable task) {
+            tasks.add(task);
+        }
+
+        private void runAll() {
+            while(!tasks.isEmpty()){
+                tasks.remove().run();
+            }
+        }
+    }
+
+    private static final class CountingExecutor implements Executor {
+        private final Executor executor;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private CountingExecutor(final Executor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void execute(final Runnable task) {
+            count.incrementAndGet();
+            executor.execute(task);
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package com.viae.common.pdf.service.impl;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.util.StringJoiner;
 
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.util.PDFTextStripper;
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -179,6 +185,82 @@ public class JavaPdfTest {
         builder.buildPdf(client, PageSize.A4, "voorbeeld.pdf");
     }
 
+    @Test
+    public void buildToStream() throws Throwable {
+        final JavaPdfBuilder.BuilderClient client = new JavaPdfBuilder.BuilderClient() {
+
+            @Override
+            public void whenBuilding(final JavaPdfBuilder builder) {
+                builder.setContext(PdfContext.builder().create().fontFamily(FontFamily.HELVETICA).fontSize(10).build());
+                builder.writeText(DefaultString.LOREM_IPSUM);
+            }
+        };
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final long byteCount = new JavaPdfBuilder().buildPdf(client, PageSize.A4, stream);
+        assertEquals(stream.size(), byteCount);
+        try(final PDDocument document = PDDocument.load(new ByteArrayInputStream(stream.toByteArray()))){
+            assertEquals(1, document.getNumberOfPages());
+        }
+    }
+
+    @Test
+    public void multiRowTableShouldContinueOnNextPages() throws Throwable {
+        final String[][] rows = new String[500][];
+        for(int i = 0; i < rows.length; i++){
+            rows[i] = new String[]{"row" + i, "maarten vandeperre"};
+        }
+        final String text = renderTableText(rows);
+
+        assertTrue(text, text.startsWith("row0"));
+        for(int i = 0; i < rows.length; i++){
+            assertTrue("row" + i, text.contains("row" + i + " "));
+        }
+    }
+
+    @Test
+    public void rowHigherThanAPageShouldBeSplitOverPages() throws Throwable {
+        final StringBuilder cell = new StringBuilder();
+        for(int i = 0; i < 3000; i++){
+            cell.append("word").append(i).append(' ');
+        }
+        final String text = renderTableText(new String[][]{{"first", "short"}, {"split", cell.toString()}, {"last", "short"}});
+
+        assertTrue(text.indexOf("word0 ") < text.indexOf("word2999 "));
+        assertTrue(text.indexOf("word2999 ") < text.indexOf("last"));
+        for(int i = 0; i < 3000; i++){
+            assertTrue("word" + i, text.contains("word" + i + " "));
+        }
+    }
+
+    private static String renderTableText(final String[][] rows) throws IOException {
+        final JavaPdfBuilder.BuilderClient client = new JavaPdfBuilder.BuilderClient() {
+
+            @Override
+            public void whenBuilding(final JavaPdfBuilder builder) {
+                builder.setContext(PdfContext.builder()
+                        .create()
+                        .fontFamily(FontFamily.COURIER)
+                        .fontSize(8)
+                        .marginTop(20)
+                        .marginBottom(20)
+                        .borderWidth(1)
+                        .cellMarginLeft(5)
+                        .cellMarginTop(5)
+                        .cellMarginBottom(5)
+                        .build());
+                builder.writeTable(rows);
+            }
+        };
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new JavaPdfBuilder().buildPdf(client, PageSize.A4, stream);
+        try(final PDDocument document = PDDocument.load(new ByteArrayInputStream(stream.toByteArray()))){
+            assertTrue(document.getNumberOfPages() > 1);
+            return new PDFTextStripper().getText(document).replaceAll("\\s+", " ");
+        }
+    }
+
     @Test
     @Ignore
     public void test4() {
@@ -0,0 +1,152 @@
+package com.viae.common.pdf.service.impl;
+
+import static com.viae.common.pdf.service.impl.TestDocuments.load;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.util.PDFTextStripper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.viae.common.pdf.model.FontFamily;
+import com.viae.common.pdf.model.PdfContext;
+import com.viae.common.pdf.service.impl.PdfBuilder.PageSize;
+
+public class MemoryPolicyTest {
+    private static final int PARAGRAPHS = 500;
+    private static final int LARGE_DOCUMENT_PARAGRAPHS = 20000;
+    private static final int WORDS_PER_PARAGRAPH = 80;
+    //the layout of the large document takes about 50MB, its content streams don't fit in heap next to it
+    private static final String SMALL_HEAP = "-Xmx80m";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void bufferShouldSpillToATemporaryFileWhenExceedingTheHeapSize() throws Throwable {
+        final File directory = folder.newFolder();
+        final byte[] content = new byte[100];
+        for(int i = 0; i < content.length; i++){
+            content[i] = (byte) i;
+        }
+
+        final SpillingScratchBuffer buffer = new SpillingScratchBuffer(64, directory);
+        buffer.write(content, 0, 60);
+        assertFalse(buffer.isSpilled());
+        buffer.write(content, 60, 40);
+        assertTrue(buffer.isSpilled());
+        assertEquals(1, directory.list().length);
+        assertEquals(100, buffer.length());
+
+        final byte[] read = new byte[100];
+        buffer.seek(0);
+        assertEquals(100, buffer.read(read, 0, read.length));
+        assertArrayEquals(content, read);
+
+        buffer.close();
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void scratchFilePoliciesShouldRenderAsHeap() throws Throwable {
+        final File directory = folder.newFolder();
+        final DocumentLayout layout = new JavaPdfBuilder().layout(new TextClient(PARAGRAPHS), PageSize.A4);
+
+        try(final PDDocument heap = load(paint(layout, MemoryPolicy.heap()));
+                final PDDocument scratchFile = load(paint(layout, MemoryPolicy.scratchFile(directory)));
+                final PDDocument heapLimit = load(paint(layout, MemoryPolicy.heapLimit(1024, directory)))){
+            final String text = new PDFTextStripper().getText(heap);
+            assertEquals(layout.getPageCount(), scratchFile.getNumberOfPages());
+            assertEquals(text, new PDFTextStripper().getText(scratchFile));
+            assertEquals(text, new PDFTextStripper().getText(heapLimit));
+        }
+        //the scratch files are deleted when the documents are closed
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void largeDocumentShouldRenderInASmallHeap() throws Throwable {
+        final File directory = folder.newFolder();
+        final File pdf = new File(directory, "large.pdf");
+        final List<String> command = new ArrayList<>(Arrays.asList(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                SMALL_HEAP,
+                "-cp", System.getProperty("surefire.test.class.path", System.getProperty("java.class.path")),
+                SmallHeapRendering.class.getName(),
+                directory.getPath(),
+                pdf.getPath()));
+        final Process process = new ProcessBuilder(command).inheritIO().start();
+        assertTrue(process.waitFor(5, TimeUnit.MINUTES));
+        assertEquals(0, process.exitValue());
+
+        try(final PDDocument document = PDDocument.load(pdf)){
+            assertTrue(document.getNumberOfPages() > 2000);
+        }
+        assertEquals(1, directory.list().length);
+    }
+
+    private static byte[] paint(final DocumentLayout layout, final MemoryPolicy policy) {
+        final PdfBuilder builder = new PdfBuilder();
+        builder.setMemoryPolicy(policy);
+        return TestDocuments.paint(builder, layout);
+    }
+
+    private static final class TextClient implements JavaPdfBuilder.BuilderClient {
+        private final int paragraphs;
+
+        private TextClient(final int paragraphs) {
+            this.paragraphs = paragraphs;
+        }
+
+        @Override
+        public void whenBuilding(final JavaPdfBuilder builder) {
+            builder.setContext(PdfContext.builder()
+                    .create()
+                    .fontFamily(FontFamily.HELVETICA)
+                    .fontSize(10)
+                    .build());
+            for(int i = 0; i < paragraphs; i++){
+                builder.writeText("paragraph " + i + " " + DefaultString.LOREM_IPSUM);
+            }
+        }
+    }
+
+    /**
+     * Renders a large document of random (badly compressible) words with a scratch file, run in a separate jvm with a small heap.
+     */
+    public static final class SmallHeapRendering {
+        public static void main(final String[] args) {
+            final JavaPdfBuilder builder = new JavaPdfBuilder();
+            builder.setMemoryPolicy(MemoryPolicy.scratchFile(new File(args[0])));
+            builder.buildPdf(new JavaPdfBuilder.BuilderClient() {
+                @Override
+                public void whenBuilding(final JavaPdfBuilder builder) {
+                    builder.setContext(PdfContext.builder()
+                            .create()
+                            .fontFamily(FontFamily.HELVETICA)
+                            .fontSize(10)
+                            .build());
+                    final Random random = new Random(1);
+                    for(int i = 0; i < LARGE_DOCUMENT_PARAGRAPHS; i++){
+                        final StringBuilder paragraph = new StringBuilder();
+                        for(int j = 0; j < WORDS_PER_PARAGRAPH; j++){
+                            paragraph.append(Long.toString(random.nextLong(), Character.MAX_RADIX)).append(' ');
+                        }
+                        builder.writeText(paragraph.toString());
+                    }
+                }
+            }, PageSize.A4, args[1]);
+        }
+    }
+}
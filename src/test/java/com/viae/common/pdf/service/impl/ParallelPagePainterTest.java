@@ -0,0 +1,84 @@
+package com.viae.common.pdf.service.impl;
+
+import static com.viae.common.pdf.service.impl.TestDocuments.load;
+import static com.viae.common.pdf.service.impl.TestDocuments.paint;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObject;
+import org.apache.pdfbox.util.PDFTextStripper;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.viae.common.pdf.service.impl.PdfBuilder.PageSize;
+
+public class ParallelPagePainterTest {
+    private static final int PARAGRAPHS = 1000;
+    private static final JavaPdfBuilder.BuilderClient CLIENT = TestDocuments.paragraphs(PARAGRAPHS);
+
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void startPool(){
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void stopPool(){
+        pool.shutdown();
+    }
+
+    @Test
+    public void pagesShouldBePaintedAsSequentially() throws Throwable {
+        final DocumentLayout layout = new JavaPdfBuilder().layout(CLIENT, PageSize.A4);
+        assertTrue(layout.getPageCount() > 40);
+
+        final JavaPdfBuilder parallelBuilder = new JavaPdfBuilder();
+        parallelBuilder.setPaintPool(pool);
+        try(final PDDocument sequential = load(paint(new JavaPdfBuilder(), layout));
+                final PDDocument parallel = load(paint(parallelBuilder, layout))){
+            assertEquals(layout.getPageCount(), parallel.getNumberOfPages());
+            assertEquals(new PDFTextStripper().getText(sequential), new PDFTextStripper().getText(parallel));
+
+            final List<?> sequentialPages = sequential.getDocumentCatalog().getAllPages();
+            final List<?> parallelPages = parallel.getDocumentCatalog().getAllPages();
+            for(int i = 0; i < sequentialPages.size(); i++){
+                final PDPage sequentialPage = (PDPage) sequentialPages.get(i);
+                final PDPage parallelPage = (PDPage) parallelPages.get(i);
+                assertEquals(sequentialPage.findMediaBox().getHeight(), parallelPage.findMediaBox().getHeight(), 0f);
+                assertArrayEquals(sequentialPage.getContents().getByteArray(), parallelPage.getContents().getByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void imageShouldBeEmbeddedOnce() throws Throwable {
+        final JavaPdfBuilder builder = new JavaPdfBuilder();
+        builder.setPaintPool(pool);
+        final DocumentLayout layout = builder.layout(CLIENT, PageSize.A4);
+
+        try(final PDDocument document = load(paint(builder, layout))){
+            final Set<Object> images = new HashSet<>();
+            int imagePages = 0;
+            for(final Object page : document.getDocumentCatalog().getAllPages()){
+                final Map<String, PDXObject> xObjects = ((PDPage) page).findResources().getXObjects();
+                for(final PDXObject xObject : xObjects.values()){
+                    images.add(xObject.getCOSObject());
+                }
+                imagePages += xObjects.isEmpty() ? 0 : 1;
+            }
+            assertEquals(PARAGRAPHS / 100, imagePages);
+            assertEquals(1, images.size());
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.viae.common.pdf.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.util.PDFOperator;
+import org.junit.Test;
+
+import com.viae.common.pdf.model.FontFamily;
+import com.viae.common.pdf.model.PdfContext;
+import com.viae.common.pdf.service.impl.PdfBuilder.PageSize;
+
+public class PdfBuilder_TextObject_Test {
+    private static final int PARAGRAPHS = 2500;
+    private static final float FONT_SIZE = 10;
+
+    @Test
+    public void paragraphsShouldBeWrittenAsOneTextObject() throws Throwable {
+        try(final PDDocument document = PDDocument.load(new ByteArrayInputStream(render()))){
+            assertTrue(document.getNumberOfPages() >= 100);
+            int textObjects = 0;
+            int fonts = 0;
+            int lines = 0;
+            for(final Object page : document.getDocumentCatalog().getAllPages()){
+                for(final Object token : parse((PDPage) page)){
+                    if(token instanceof PDFOperator){
+                        final String operator = ((PDFOperator) token).getOperation();
+                        textObjects += "BT".equals(operator) ? 1 : 0;
+                        fonts += "Tf".equals(operator) ? 1 : 0;
+                        lines += "Tj".equals(operator) ? 1 : 0;
+                    }
+                }
+            }
+            //a paragraph continuing on the next page takes a text object on both pages
+            assertTrue(textObjects <= PARAGRAPHS + document.getNumberOfPages());
+            assertEquals(document.getNumberOfPages(), fonts);
+            assertTrue(lines >= PARAGRAPHS * 3);
+        }
+    }
+
+    @Test
+    public void contentStreamsShouldBeSmallerThanWithATextObjectPerLine() throws Throwable {
+        try(final PDDocument document = PDDocument.load(new ByteArrayInputStream(render()));
+                final PDDocument reference = new PDDocument()){
+            long size = 0;
+            long referenceSize = 0;
+            for(final Object page : document.getDocumentCatalog().getAllPages()){
+                final PDPage referencePage = new PDPage(PDPage.PAGE_SIZE_A4);
+                reference.addPage(referencePage);
+                try(final PDPageContentStream contentStream = new PDPageContentStream(reference, referencePage)){
+                    for(final TextLine line : getLines((PDPage) page)){
+                        contentStream.beginText();
+                        contentStream.setFont(PDType1Font.HELVETICA, FONT_SIZE);
+                        contentStream.moveTextPositionByAmount(line.x, line.y);
+                        contentStream.drawString(line.text);
+                        contentStream.endText();
+                    }
+                }
+                size += ((PDPage) page).getContents().getByteArray().length;
+                referenceSize += referencePage.getContents().getByteArray().length;
+            }
+            assertTrue(size + " should be smaller than " + referenceSize, size < referenceSize * 0.9);
+        }
+    }
+
+    @Test
+    public void linesShouldKeepTheirPosition() throws Throwable {
+        try(final PDDocument document = PDDocument.load(new ByteArrayInputStream(render()))){
+            final List<TextLine> lines = getLines((PDPage) document.getDocumentCatalog().getAllPages().get(1));
+            for(int i = 1; i < lines.size(); i++){
+                assertEquals(0, lines.get(i).x, 0);
+                assertEquals(lines.get(0).y - lines.get(1).y, lines.get(i - 1).y - lines.get(i).y, 0.01f);
+            }
+        }
+    }
+
+    private static byte[] render() {
+        final JavaPdfBuilder.BuilderClient client = new JavaPdfBuilder.BuilderClient() {
+            @Override
+            public void whenBuilding(final JavaPdfBuilder builder) {
+                builder.setContext(PdfContext.builder().create().fontFamily(FontFamily.HELVETICA).fontSize(FONT_SIZE).build());
+                for(int i = 0; i < PARAGRAPHS; i++){
+                    builder.writeText(DefaultString.LOREM_IPSUM);
+                }
+            }
+        };
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new JavaPdfBuilder().buildPdf(client, PageSize.A4, stream);
+        return stream.toByteArray();
+    }
+
+    private static List<Object> parse(final PDPage page) throws IOException {
+        final PDFStreamParser parser = new PDFStreamParser(page.getContents());
+        parser.parse();
+        return parser.getTokens();
+    }
+
+    /**
+     * Interpret the text positioning operators of the page.
+     */
+    private static List<TextLine> getLines(final PDPage page) throws IOException {
+        final List<TextLine> lines = new ArrayList<>();
+        final List<Object> operands = new ArrayList<>();
+        float x = 0;
+        float y = 0;
+        float leading = 0;
+        for(final Object token : parse(page)){
+            if(!(token instanceof PDFOperator)){
+                operands.add(token);
+                continue;
+            }
+            switch (((PDFOperator) token).getOperation()) {
+                case "BT":
+                    x = 0;
+                    y = 0;
+                    break;
+                case "TD":
+                    leading = -((COSNumber) operands.get(1)).floatValue();
+                    x += ((COSNumber) operands.get(0)).floatValue();
+                    y += ((COSNumber) operands.get(1)).floatValue();
+                    break;
+                case "Td":
+                    x += ((COSNumber) operands.get(0)).floatValue();
+                    y += ((COSNumber) operands.get(1)).floatValue();
+                    break;
+                case "T*":
+                    y -= leading;
+                    break;
+                case "Tj":
+                    lines.add(new TextLine(((COSString) operands.get(0)).getString(), x, y));
+                    break;
+                default:
+                    break;
+            }
+            operands.clear();
+        }
+        return lines;
+    }
+
+    private static final class TextLine {
+        private final String text;
+        private final float x;
+        private final float y;
+
+        private TextLine(final String text, final float x, final float y) {
+            this.text = text;
+            this.x = x;
+            this.y = y;
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package com.viae.common.pdf.service.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.AdditionalMatchers.eq;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyFloat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -27,12 +29,6 @@ public class PdfBuilder_WriteTableRow_Test {
     private static final FontFamily COURIER_FONT = FontFamily.COURIER;
     private static final PDFont DEFAULT_FONT = PDType1Font.COURIER;
     private static float DEFAULT_FONT_SIZE = 10f;
-    private static float DEFAULT_Y_POSITION_1 = Float.valueOf(-7.9124994f);
-    private static float DEFAULT_Y_POSITION_2 = Float.valueOf(-18.462498f);
-    private static float DEFAULT_Y_POSITION_3 = Float.valueOf(-29.012497f);
-    private static float DEFAULT_Y_POSITION_4 = Float.valueOf(-39.562496f);
-    private static float DEFAULT_Y_POSITION_5 = Float.valueOf(-50.112495f);
-    private static float DEFAULT_Y_POSITION_6 = Float.valueOf(-60.662495f);
     private static final PdfContext DEFAULT_CONTEXT = PdfContext.builder()
             .create()
             .fontFamily(COURIER_FONT)
@@ -56,88 +52,107 @@ public class PdfBuilder_WriteTableRow_Test {
     @Before
     public void setupFreshFixture(){
         contentStream = mock(PDPageContentStream.class);
+        builder.context = DEFAULT_CONTEXT;
         builder.initPageStart(PDPage.PAGE_SIZE_A4);
         page = new PDPage(PDPage.PAGE_SIZE_A4);
     }
 
     @Test
     public void testWithSingleRowSingleColumn() throws Throwable {
-        builder.context = DEFAULT_CONTEXT;
-        builder.contentStream = contentStream;
-
         final List<String> expectedWrittenString = Arrays.asList("column1");
         final String[][] content = new String[][]{{"column1"}};
         builder.writeTable(page, content);
+        paint();
 
         verifyTextWriteMethods(1);
         assertEquals(Arrays.asList(DEFAULT_FONT), fontFamilyCaptor.getAllValues());
         assertEquals(Arrays.asList(DEFAULT_FONT_SIZE), fontSizeCaptor.getAllValues());
         assertEquals(Arrays.asList(Float.valueOf(0)), positionXCaptor.getAllValues());
-        assertEquals(Arrays.asList(DEFAULT_Y_POSITION_1), positionYCaptor.getAllValues());
+        assertEquals(Arrays.asList(getFirstLineY()), positionYCaptor.getAllValues());
         assertEquals(expectedWrittenString, textCaptor.getAllValues());
     }
 
     @Test
     public void testWithSingleRowSingleColumnWithWrappedText() throws Throwable {
-        builder.context = DEFAULT_CONTEXT;
-        builder.contentStream = contentStream;
-
         final List<String> expectedWrittenString = Arrays.asList(
-                "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor ",
-                "incididunt ut labore et dolore magna aliqua. Ut enim ad minim veniam, quis ",
-                "nostrud exercitation ullamco laboris nisi ut aliquip ex ea commodo consequat. ",
-                "Duis aute irure dolor in reprehenderit in voluptate velit esse cillum dolore ",
-                "eu fugiat nulla pariatur. Excepteur sint occaecat cupidatat non proident, sunt ",
-                "in culpa qui officia deserunt mollit anim id est laborum."
+                "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore ",
+                "et dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut ",
+                "aliquip ex ea commodo consequat. Duis aute irure dolor in reprehenderit in voluptate velit esse ",
+                "cillum dolore eu fugiat nulla pariatur. Excepteur sint occaecat cupidatat non proident, sunt in ",
+                "culpa qui officia deserunt mollit anim id est laborum."
                 );
         final String[][] content = new String[][]{{DefaultString.LOREM_IPSUM}};
         builder.writeTable(page, content);
-
-        verifyTextWriteMethods(6);
-        assertEquals(Arrays.asList(DEFAULT_FONT, DEFAULT_FONT, DEFAULT_FONT, DEFAULT_FONT, DEFAULT_FONT, DEFAULT_FONT), fontFamilyCaptor.getAllValues());
-        assertEquals(Arrays.asList(DEFAULT_FONT_SIZE, DEFAULT_FONT_SIZE, DEFAULT_FONT_SIZE, DEFAULT_FONT_SIZE, DEFAULT_FONT_SIZE, DEFAULT_FONT_SIZE), fontSizeCaptor.getAllValues());
-        assertEquals(Arrays.asList(Float.valueOf(0), Float.valueOf(0), Float.valueOf(0), Float.valueOf(0), Float.valueOf(0), Float.valueOf(0)), positionXCaptor.getAllValues());
-        assertEquals(Arrays.asList(DEFAULT_Y_POSITION_1, DEFAULT_Y_POSITION_2, DEFAULT_Y_POSITION_3, DEFAULT_Y_POSITION_4, DEFAULT_Y_POSITION_5, DEFAULT_Y_POSITION_6), positionYCaptor.getAllValues());
+        paint();
+
+        //the lines of the cell are written in one text object, the following lines are moved with the leading
+        verifyTextWriteMethods(1, 1, 5);
+        //the second line sets the leading (TD), the other lines are moved with that leading (T*)
+        verify(contentStream, times(1)).appendRawCommands(eq(-2 * builder.getLineHeight(), 0.001f));
+        verify(contentStream, times(1)).appendRawCommands(" TD\n");
+        verify(contentStream, times(3)).appendRawCommands("T*\n");
+        assertEquals(Arrays.asList(DEFAULT_FONT), fontFamilyCaptor.getAllValues());
+        assertEquals(Arrays.asList(DEFAULT_FONT_SIZE), fontSizeCaptor.getAllValues());
+        assertEquals(Arrays.asList(Float.valueOf(0)), positionXCaptor.getAllValues());
+        assertEquals(Arrays.asList(getFirstLineY()), positionYCaptor.getAllValues());
         final List<String> wrappedLines = textCaptor.getAllValues();
-        assertEquals(6, wrappedLines.size());
+        assertEquals(5, wrappedLines.size());
         assertEquals(expectedWrittenString.get(0), wrappedLines.get(0));
         assertEquals(expectedWrittenString.get(1), wrappedLines.get(1));
         assertEquals(expectedWrittenString.get(2), wrappedLines.get(2));
         assertEquals(expectedWrittenString.get(3), wrappedLines.get(3));
         assertEquals(expectedWrittenString.get(4), wrappedLines.get(4));
-        assertEquals(expectedWrittenString.get(5), wrappedLines.get(5));
     }
 
     @Test
     public void testWithMultipleRowSingleColumn() throws Throwable {
-        builder.context = DEFAULT_CONTEXT;
-        builder.contentStream = contentStream;
-
-        try{
-            final String[][] content = new String[][]{{"row1 - column1"}, {"row2 - column1"}};
-            builder.writeTable(page, content);
-        } catch(final UnsupportedOperationException e){
-            assertTrue(e.getLocalizedMessage(), "Multi row is currently not supported".equals(e.getLocalizedMessage()));
-        }
+        final String[][] content = new String[][]{{"row1 - column1"}, {"row2 - column1"}};
+        builder.writeTable(page, content);
+        final List<LayoutBox> boxes = builder.getCurrentPage().getBoxes();
+        paint();
+
+        //the rows are painted in one text object, the font is set once
+        verify(contentStream, times(1)).beginText();
+        verify(contentStream, times(1)).setFont(fontFamilyCaptor.capture(), fontSizeCaptor.capture());
+        verify(contentStream, times(2)).drawString(textCaptor.capture());
+        verify(contentStream, times(1)).endText();
+        assertEquals(Arrays.asList("row1 - column1", "row2 - column1"), textCaptor.getAllValues());
+        assertTrue(((LayoutBox.TextBox) boxes.get(0)).getY() > ((LayoutBox.TextBox) boxes.get(1)).getY());
+        //3 row lines and 2 column lines, stroked at once
+        verify(contentStream, times(5)).addLine(anyFloat(), anyFloat(), anyFloat(), anyFloat());
+        verify(contentStream, times(1)).stroke();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithMultipleRowDifferentColumnCount() throws Throwable {
+        builder.writeTable(page, new String[][]{{"row1 - column1"}, {"row2 - column1", "row2 - column2"}});
     }
 
     @Test
     public void testWithSingleRowMultipleColumns() throws Throwable {
-        builder.context = DEFAULT_CONTEXT;
-        builder.contentStream = contentStream;
-
         final List<String> expectedWrittenString = Arrays.asList("column1", "column2");
         final String[][] content = new String[][]{{"column1", "column2"}};
         builder.writeTable(page, content);
+        paint();
 
-        verifyTextWriteMethods(2);
-        assertEquals(Arrays.asList(PDType1Font.COURIER, PDType1Font.COURIER), fontFamilyCaptor.getAllValues());
-        assertEquals(Arrays.asList(DEFAULT_FONT_SIZE, DEFAULT_FONT_SIZE), fontSizeCaptor.getAllValues());
+        //the second column is positioned relative to the first column
+        verifyTextWriteMethods(1, 2, 2);
+        assertEquals(Arrays.asList(PDType1Font.COURIER), fontFamilyCaptor.getAllValues());
+        assertEquals(Arrays.asList(DEFAULT_FONT_SIZE), fontSizeCaptor.getAllValues());
         assertEquals(Arrays.asList(Float.valueOf(0), builder.getColumnWidth(page, 2)), positionXCaptor.getAllValues());
-        assertEquals(Arrays.asList(DEFAULT_Y_POSITION_1, DEFAULT_Y_POSITION_1), positionYCaptor.getAllValues());
+        assertEquals(Arrays.asList(getFirstLineY(), Float.valueOf(0)), positionYCaptor.getAllValues());
         assertEquals(expectedWrittenString, textCaptor.getAllValues());
     }
 
+    private void verifyTextWriteMethods(final int textObjectCount, final int moveCount, final int textWriteCount)
+            throws IOException {
+        verify(contentStream, times(textObjectCount)).beginText();
+        verify(contentStream, times(1)).setFont(fontFamilyCaptor.capture(), fontSizeCaptor.capture());
+        verify(contentStream, times(moveCount)).moveTextPositionByAmount(positionXCaptor.capture(), positionYCaptor.capture());
+        verify(contentStream, times(textWriteCount)).drawString(textCaptor.capture());
+        verify(contentStream, times(textObjectCount)).endText();
+    }
+
     private void verifyTextWriteMethods(final int textWriteCount)
             throws IOException {
         verify(contentStream, times(textWriteCount)).beginText();
@@ -147,4 +162,16 @@ public class PdfBuilder_WriteTableRow_Test {
         verify(contentStream, times(textWriteCount)).endText();
     }
 
+    /**
+     * The first line of the table is written one line below the top of the first cell,
+     * the text object is started at that position (following moves are relative).
+     */
+    private Float getFirstLineY() {
+        return PDPage.PAGE_SIZE_A4.getHeight() - DEFAULT_CONTEXT.getMarginTop() - DEFAULT_CONTEXT.getCellMarginTop() - builder.getLineHeight();
+    }
+
+    private void paint() throws IOException {
+        new PagePainter(null).paint(builder.getCurrentPage(), contentStream);
+    }
+
 }
@@ -1,7 +1,10 @@
 package com.viae.common.pdf.service.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.AdditionalMatchers.eq;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -29,12 +32,6 @@ public class PdfBuilder_WriteText_Test {
     private static final FontFamily COURIER_FONT = FontFamily.COURIER;
     private static final PDFont DEFAULT_FONT = PDType1Font.COURIER;
     private static float DEFAULT_FONT_SIZE = 10f;
-    private static float DEFAULT_Y_POSITION_1 = Float.valueOf(831.3398f);
-    private static float DEFAULT_Y_POSITION_2 = Float.valueOf(810.2398f);
-    private static float DEFAULT_Y_POSITION_3 = Float.valueOf(789.1398f);
-    private static float DEFAULT_Y_POSITION_4 = Float.valueOf(768.03973f);
-    private static float DEFAULT_Y_POSITION_5 = Float.valueOf(746.93976f);
-    private static float DEFAULT_Y_POSITION_6 = Float.valueOf(725.8398f);
     private static final PdfContext DEFAULT_CONTEXT = PdfContext.builder()
             .create()
             .fontFamily(COURIER_FONT)
@@ -59,6 +56,7 @@ public class PdfBuilder_WriteText_Test {
     @Before
     public void setupFreshFixture(){
         contentStream = mock(PDPageContentStream.class);
+        builder.context = DEFAULT_CONTEXT;
         builder.initPageStart(PDPage.PAGE_SIZE_A4);
         document = new PDDocument();
         defaultJoiner = new StringJoiner("\n");
@@ -66,66 +64,67 @@ public class PdfBuilder_WriteText_Test {
 
     @Test
     public void testWriteStringWithoutText() throws Throwable {
-        builder.context = DEFAULT_CONTEXT;
-        builder.contentStream = contentStream;
-
         final String expectedWrittenString = "";
         doWriteText(expectedWrittenString);
 
-        verifyTextWriteMethods(1);
-        final float expectedPositionY = builder.getPositionY(PDPage.PAGE_SIZE_A4, 1);
-        validateWriteTextResult(expectedWrittenString, PDType1Font.COURIER, Float.valueOf(0), Float.valueOf(0), expectedPositionY);
+        //an empty text has no lines, nothing is written and the position isn't moved
+        verify(contentStream, never()).beginText();
+        verify(contentStream, never()).drawString(anyString());
+        verify(contentStream, never()).endText();
+        assertEquals(getFirstLineY(), builder.getPositionY(PDPage.PAGE_SIZE_A4, builder.getLineHeight()), 0f);
     }
 
     @Test
     public void testWriteStringWithSingleLineText() throws Throwable {
-        builder.context = builder.context = DEFAULT_CONTEXT;;
-        builder.contentStream = contentStream;
-
         defaultJoiner.add("single line");
         final String expectedWrittenString = "single line";
         doWriteText(expectedWrittenString);
 
         verifyTextWriteMethods(1);
-        final float expectedPositionY = builder.getPositionY(PDPage.PAGE_SIZE_A4, 1);
-        validateWriteTextResult(expectedWrittenString, PDType1Font.COURIER, Float.valueOf(0), Float.valueOf(0), expectedPositionY);
+        validateWriteTextResult(expectedWrittenString, PDType1Font.COURIER, DEFAULT_FONT_SIZE, Float.valueOf(0), getFirstLineY());
     }
 
     @Test
     public void testWriteStringWithMultiLineText() throws Throwable {
-        builder.context = builder.context = DEFAULT_CONTEXT;;
-        builder.contentStream = contentStream;
-
         defaultJoiner.add(DefaultString.LOREM_IPSUM);
         final List<String> expectedWrittenString = Arrays.asList(
-                "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor ",
-                "incididunt ut labore et dolore magna aliqua. Ut enim ad minim veniam, quis ",
-                "nostrud exercitation ullamco laboris nisi ut aliquip ex ea commodo consequat. ",
-                "Duis aute irure dolor in reprehenderit in voluptate velit esse cillum dolore ",
-                "eu fugiat nulla pariatur. Excepteur sint occaecat cupidatat non proident, sunt ",
-                "in culpa qui officia deserunt mollit anim id est laborum."
+                "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore ",
+                "et dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut ",
+                "aliquip ex ea commodo consequat. Duis aute irure dolor in reprehenderit in voluptate velit esse ",
+                "cillum dolore eu fugiat nulla pariatur. Excepteur sint occaecat cupidatat non proident, sunt in ",
+                "culpa qui officia deserunt mollit anim id est laborum."
                 );
         final String toBeWritten = defaultJoiner.toString();
         builder.writeText(toBeWritten, document, builder.getPageSize(PageSize.A4));
+        paint();
 
         final List<String> wrappedLines = textCaptor.getAllValues();
-        verifyTextWriteMethods(6);
-        assertEquals(Arrays.asList(DEFAULT_FONT, DEFAULT_FONT, DEFAULT_FONT, DEFAULT_FONT, DEFAULT_FONT, DEFAULT_FONT), fontFamilyCaptor.getAllValues());
-        assertEquals(Arrays.asList(DEFAULT_FONT_SIZE, DEFAULT_FONT_SIZE, DEFAULT_FONT_SIZE, DEFAULT_FONT_SIZE, DEFAULT_FONT_SIZE, DEFAULT_FONT_SIZE), fontSizeCaptor.getAllValues());
-        assertEquals(Arrays.asList(Float.valueOf(0), Float.valueOf(0), Float.valueOf(0), Float.valueOf(0), Float.valueOf(0), Float.valueOf(0)), positionXCaptor.getAllValues());
-        assertEquals(Arrays.asList(DEFAULT_Y_POSITION_1, DEFAULT_Y_POSITION_2, DEFAULT_Y_POSITION_3, DEFAULT_Y_POSITION_4, DEFAULT_Y_POSITION_5, DEFAULT_Y_POSITION_6), positionYCaptor.getAllValues());
-        assertEquals(6, wrappedLines.size());
+        //the paragraph is written in one text object, the following lines are moved with the leading
+        verify(contentStream, times(1)).beginText();
+        verify(contentStream, times(1)).setFont(fontFamilyCaptor.capture(), fontSizeCaptor.capture());
+        verify(contentStream, times(1)).moveTextPositionByAmount(positionXCaptor.capture(), positionYCaptor.capture());
+        //the second line sets the leading (TD), the other lines are moved with that leading (T*)
+        verify(contentStream, times(1)).appendRawCommands(eq(-2 * builder.getLineHeight(), 0.001f));
+        verify(contentStream, times(1)).appendRawCommands(" TD\n");
+        verify(contentStream, times(3)).appendRawCommands("T*\n");
+        verify(contentStream, times(5)).drawString(textCaptor.capture());
+        verify(contentStream, times(1)).endText();
+        assertEquals(Arrays.asList(DEFAULT_FONT), fontFamilyCaptor.getAllValues());
+        assertEquals(Arrays.asList(DEFAULT_FONT_SIZE), fontSizeCaptor.getAllValues());
+        assertEquals(Arrays.asList(Float.valueOf(0)), positionXCaptor.getAllValues());
+        assertEquals(Arrays.asList(getFirstLineY()), positionYCaptor.getAllValues());
+        assertEquals(5, wrappedLines.size());
         assertEquals(expectedWrittenString.get(0), wrappedLines.get(0));
         assertEquals(expectedWrittenString.get(1), wrappedLines.get(1));
         assertEquals(expectedWrittenString.get(2), wrappedLines.get(2));
         assertEquals(expectedWrittenString.get(3), wrappedLines.get(3));
         assertEquals(expectedWrittenString.get(4), wrappedLines.get(4));
-        assertEquals(expectedWrittenString.get(5), wrappedLines.get(5));
     }
 
     private void doWriteText(final String expectedWrittenString) throws IOException {
         final String toBeWritten = defaultJoiner.toString();
         builder.writeText(toBeWritten, document, builder.getPageSize(PageSize.A4));
+        paint();
         assertEquals(expectedWrittenString, toBeWritten);
     }
 
@@ -146,4 +145,16 @@ public class PdfBuilder_WriteText_Test {
         verify(contentStream, times(textWriteCount)).endText();
     }
 
+    /**
+     * The first line is written one line below the top margin,
+     * the text object is started at that position (following lines are moved with the leading).
+     */
+    private Float getFirstLineY() {
+        return PDPage.PAGE_SIZE_A4.getHeight() - DEFAULT_CONTEXT.getMarginTop() - builder.getLineHeight();
+    }
+
+    private void paint() throws IOException {
+        new PagePainter(null).paint(builder.getCurrentPage(), contentStream);
+    }
+
 }
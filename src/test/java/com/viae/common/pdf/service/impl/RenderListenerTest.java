@@ -0,0 +1,110 @@
+package com.viae.common.pdf.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+
+import org.junit.Test;
+
+import com.viae.common.pdf.service.impl.PdfBuilder.PageSize;
+import com.viae.common.pdf.service.impl.RenderStatistics.Counter;
+import com.viae.common.pdf.service.impl.RenderStatistics.Timer;
+
+public class RenderListenerTest {
+
+    @Test
+    public void everyPhaseShouldBeMeasured() {
+        final RecordingListener listener = new RecordingListener();
+        final StringPdfBuilder builder = new StringPdfBuilder();
+        builder.setRenderListener(listener);
+
+        final long bytes = builder.buildPdf(getTemplate(), PageSize.A4, new ByteArrayOutputStream());
+
+        assertEquals(1, listener.statistics.size());
+        final RenderStatistics statistics = listener.statistics.get(0);
+        for(final Timer timer : Timer.values()){
+            assertTrue(timer.name(), statistics.getNanos(timer) > 0);
+        }
+        assertTrue(statistics.getNanos(Timer.LAYOUT) >= statistics.getNanos(Timer.WRAP) + statistics.getNanos(Timer.IMAGE_DECODE));
+        assertEquals(1, statistics.getCount(Counter.PAGES));
+        //the header and two rows of two single line cells
+        assertEquals(5, statistics.getCount(Counter.LINES));
+        assertEquals(2, statistics.getCount(Counter.TABLE_ROWS));
+        assertTrue(statistics.getCount(Counter.IMAGE_BYTES) > 0);
+        assertEquals(bytes, statistics.getCount(Counter.BYTES_WRITTEN));
+    }
+
+    @Test
+    public void streamedDocumentShouldBeMeasured() {
+        final RecordingListener listener = new RecordingListener();
+        final StringPdfBuilder builder = new StringPdfBuilder();
+        builder.setRenderListener(listener);
+        builder.setStreaming(true);
+
+        final long bytes = builder.buildPdf(getTemplate(), PageSize.A4, new ByteArrayOutputStream());
+
+        final RenderStatistics statistics = listener.statistics.get(0);
+        assertTrue(statistics.getNanos(Timer.CONTENT_STREAM) > 0);
+        assertTrue(statistics.getNanos(Timer.SAVE) > 0);
+        assertEquals(bytes, statistics.getCount(Counter.BYTES_WRITTEN));
+    }
+
+    @Test
+    public void everyPaintOfALayoutShouldBeReported() {
+        final RecordingListener listener = new RecordingListener();
+        final StringPdfBuilder builder = new StringPdfBuilder();
+        builder.setRenderListener(listener);
+        final DocumentLayout layout = builder.layout(CompiledTemplate.compile(getTemplate()), PageSize.A4);
+
+        builder.buildPdf(layout, PdfOutput.toStream(new ByteArrayOutputStream()));
+        builder.buildPdf(layout, PdfOutput.toStream(new ByteArrayOutputStream()));
+
+        assertEquals(2, listener.statistics.size());
+        final RenderStatistics first = listener.statistics.get(0);
+        final RenderStatistics second = listener.statistics.get(1);
+        //the layout is shared, the painting is measured per document
+        assertEquals(first.getNanos(Timer.LAYOUT), second.getNanos(Timer.LAYOUT));
+        assertEquals(first.getCount(Counter.LINES), second.getCount(Counter.LINES));
+        assertEquals(1, second.getCount(Counter.PAGES));
+        //a compiled template isn't parsed while laying out
+        assertEquals(0, first.getNanos(Timer.PARSE));
+    }
+
+    @Test
+    public void nothingShouldBeMeasuredWithoutListener() {
+        final DocumentLayout layout = new StringPdfBuilder().layout(CompiledTemplate.compile(getTemplate()), PageSize.A4);
+
+        assertNull(layout.getStatistics());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void listenerShouldBeProvided() {
+        new PdfBuilder().setRenderListener(null);
+    }
+
+    private static String getTemplate() {
+        final StringJoiner joiner = new StringJoiner("\n");
+        joiner.add("conf|font_family|COURIER|EOL|");
+        joiner.add("conf|font_size|10|EOL|");
+        joiner.add("img|src/test/resources/schoonheidsspecialiste.png|png|25|EOL|");
+        joiner.add("text|Big header title|EOL|");
+        joiner.add("table_row|name|maarten vandeperre|EOL|");
+        joiner.add("table_row|company|VIAE|EOL|");
+        joiner.add("");
+        return joiner.toString();
+    }
+
+    private static final class RecordingListener implements RenderListener {
+        private final List<RenderStatistics> statistics = new ArrayList<>();
+
+        @Override
+        public void documentRendered(final RenderStatistics statistics) {
+            this.statistics.add(statistics);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.viae.common.pdf.service.impl;
+
+import static com.viae.common.pdf.service.impl.TestDocuments.load;
+import static com.viae.common.pdf.service.impl.TestDocuments.paint;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObject;
+import org.apache.pdfbox.util.PDFTextStripper;
+import org.junit.Test;
+
+import com.viae.common.pdf.service.impl.PdfBuilder.PageSize;
+
+public class StreamingPdfWriterTest {
+    private static final int PARAGRAPHS = 500;
+    private static final JavaPdfBuilder.BuilderClient CLIENT = TestDocuments.paragraphs(PARAGRAPHS);
+
+    @Test
+    public void streamedPdfShouldEqualSavedPdf() throws Throwable {
+        final DocumentLayout layout = new JavaPdfBuilder().layout(CLIENT, PageSize.A4);
+        final JavaPdfBuilder streamingBuilder = new JavaPdfBuilder();
+        streamingBuilder.setStreaming(true);
+
+        try(final PDDocument saved = load(paint(new JavaPdfBuilder(), layout));
+                final PDDocument streamed = load(paint(streamingBuilder, layout))){
+            assertEquals(layout.getPageCount(), streamed.getNumberOfPages());
+            assertEquals(new PDFTextStripper().getText(saved), new PDFTextStripper().getText(streamed));
+            assertEquals(1, countImages(streamed));
+        }
+    }
+
+    @Test
+    public void streamedPdfShouldBePaintableOnAPool() throws Throwable {
+        final DocumentLayout layout = new JavaPdfBuilder().layout(CLIENT, PageSize.A4);
+        final JavaPdfBuilder streamingBuilder = new JavaPdfBuilder();
+        streamingBuilder.setStreaming(true);
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        streamingBuilder.setPaintPool(pool);
+
+        try(final PDDocument saved = load(paint(new JavaPdfBuilder(), layout));
+                final PDDocument streamed = load(paint(streamingBuilder, layout))){
+            assertEquals(new PDFTextStripper().getText(saved), new PDFTextStripper().getText(streamed));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void pageShouldBeWrittenAsSoonAsItIsPainted() throws Throwable {
+        final DocumentLayout layout = new JavaPdfBuilder().layout(CLIENT, PageSize.A4);
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try(final PDDocument imageDocument = new PDDocument()){
+            final PagePainter imagePainter = new PagePainter(imageDocument);
+            imagePainter.embedResources(layout.getPages().get(0));
+            final DocumentResources resources = imagePainter.getResources();
+
+            final StreamingPdfWriter writer = new StreamingPdfWriter(stream);
+            final PaintedPage page = PaintedPage.paint(layout.getPages().get(0), resources);
+            writer.pagePainted(page);
+            //the content stream, the page and the font and image it uses
+            final int firstPageSize = stream.size();
+            assertTrue(firstPageSize > page.getContent().length);
+            assertTrue(new String(stream.toByteArray(), "ISO-8859-1").contains("/Subtype /Image"));
+
+            writer.pagePainted(PaintedPage.paint(layout.getPages().get(1), resources));
+            assertTrue(stream.size() > firstPageSize);
+            writer.finish();
+        }
+        try(final PDDocument document = load(stream.toByteArray())){
+            assertEquals(2, document.getNumberOfPages());
+        }
+    }
+
+    private static int countImages(final PDDocument document) {
+        final Set<Object> images = new HashSet<>();
+        for(final Object page : document.getDocumentCatalog().getAllPages()){
+            for(final PDXObject xObject : ((PDPage) page).findResources().getXObjects().values()){
+                images.add(xObject.getCOSObject());
+            }
+        }
+        return images.size();
+    }
+}
@@ -0,0 +1,355 @@
+package com.viae.common.pdf.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.util.PDFTextStripper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.viae.common.pdf.model.EmbeddedFont;
+import com.viae.common.pdf.service.impl.PdfBuilder.PageSize;
+
+public class StringPdfTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void buildFromString() throws Throwable {
+        final File output = folder.newFile("string.pdf");
+        new StringPdfBuilder().buildPdf(getTemplate(), PageSize.A4, output.getPath());
+        assertEquals(1, getPageCount(output));
+    }
+
+    @Test
+    public void buildFromChannel() throws Throwable {
+        final File output = folder.newFile("channel.pdf");
+        final byte[] template = getTemplate().getBytes(StandardCharsets.UTF_8);
+        new StringPdfBuilder().buildPdf(Channels.newChannel(new ByteArrayInputStream(template)), StandardCharsets.UTF_8, PageSize.A4, output.getPath());
+        assertEquals(1, getPageCount(output));
+    }
+
+    @Test
+    public void buildToStreamShouldReturnTheByteCountAndKeepTheStreamOpen() throws Throwable {
+        final CloseTrackingOutputStream stream = new CloseTrackingOutputStream();
+        final long byteCount = new StringPdfBuilder().buildPdf(getTemplate(), PageSize.A4, stream);
+        assertEquals(stream.size(), byteCount);
+        assertFalse(stream.closed);
+        try(final PDDocument document = PDDocument.load(new ByteArrayInputStream(stream.toByteArray()))){
+            assertEquals(1, document.getNumberOfPages());
+        }
+    }
+
+    @Test
+    public void buildToChannelShouldReturnTheByteCount() throws Throwable {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final long byteCount = new StringPdfBuilder().buildPdf(getTemplate(), PageSize.A4, Channels.newChannel(stream));
+        assertTrue(byteCount > 0);
+        assertEquals(stream.size(), byteCount);
+    }
+
+    @Test
+    public void buildFromCompiledTemplateShouldBeRepeatable() throws Throwable {
+        final CompiledTemplate template = CompiledTemplate.compile(getTemplate());
+        for(int i = 0; i < 3; i++){
+            final File output = folder.newFile("compiled" + i + ".pdf");
+            new StringPdfBuilder().buildPdf(template, PageSize.A4, output.getPath());
+            assertEquals(1, getPageCount(output));
+        }
+    }
+
+    @Test
+    public void repeatedImageShouldBeEmbeddedOnce() throws Throwable {
+        final String image = "img|src/test/resources/schoonheidsspecialiste.png|png|25|EOL|\n";
+        final StringBuilder template = new StringBuilder("conf|font_family|HELVETICA|EOL|\n");
+        final ByteArrayOutputStream single = new ByteArrayOutputStream();
+        new StringPdfBuilder().buildPdf(template + image, PageSize.A4, single);
+        for(int i = 0; i < 50; i++){
+            template.append(image);
+        }
+        final StringPdfBuilder builder = new StringPdfBuilder();
+        final ImageCache imageCache = new ImageCache(64 * 1024 * 1024);
+        builder.setImageCache(imageCache);
+        final ByteArrayOutputStream repeated = new ByteArrayOutputStream();
+        builder.buildPdf(template.toString(), PageSize.A4, repeated);
+        builder.buildPdf(template.toString(), PageSize.A4, new ByteArrayOutputStream());
+
+        assertTrue(repeated.size() < single.size() * 2);
+        assertEquals(1, imageCache.getMissCount());
+        assertEquals(1, imageCache.getHitCount());
+    }
+
+    @Test
+    public void registeredFontShouldBeEmbeddedOnceAsSubset() throws Throwable {
+        final File fontFile = new File("src/test/resources/fonts/DejaVuSansMono.ttf");
+        EmbeddedFont.register("DejaVu Sans Mono", fontFile);
+        final StringBuilder template = new StringBuilder("conf|font_family|DejaVu Sans Mono|EOL|\nconf|font_size|10|EOL|\n");
+        for(int i = 0; i < 60; i++){
+            template.append("text|").append(DefaultString.LOREM_IPSUM).append("|EOL|\n");
+        }
+        template.append("table_row|name|VIAE|EOL|\n");
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        try{
+            for(int variant = 0; variant < 3; variant++){
+                final StringPdfBuilder builder = new StringPdfBuilder();
+                builder.setPaintPool(variant == 1 ? pool : null);
+                builder.setStreaming(variant == 2);
+                final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+                builder.buildPdf(template.toString(), PageSize.A4, stream);
+
+                //only the subset of the used glyphs is embedded
+                assertTrue(stream.size() < fontFile.length() / 4);
+                try(final PDDocument document = PDDocument.loadNonSeq(new ByteArrayInputStream(stream.toByteArray()), null)){
+                    assertTrue(document.getNumberOfPages() > 1);
+                    assertTrue(new PDFTextStripper().getText(document).contains("Lorem ipsum dolor sit amet"));
+                    final Set<COSBase> fonts = Collections.newSetFromMap(new IdentityHashMap<COSBase, Boolean>());
+                    for(final Object page : document.getDocumentCatalog().getAllPages()){
+                        for(final PDFont font : ((PDPage) page).findResources().getFonts().values()){
+                            assertTrue(font.getBaseFont().endsWith("+DejaVuSansMono"));
+                            fonts.add(font.getCOSObject());
+                        }
+                    }
+                    assertEquals(1, fonts.size());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void unregisteredFontShouldFail() {
+        new StringPdfBuilder().layout(CompiledTemplate.compile("conf|font_family|Unregistered Font|EOL|\n"), PageSize.A4);
+    }
+
+    @Test
+    public void buildFromReaderShouldStreamTheTemplate() throws Throwable {
+        final File output = folder.newFile("reader.pdf");
+        final GeneratedTemplateReader reader = new GeneratedTemplateReader(5000);
+        new StringPdfBuilder().buildPdf(reader, PageSize.A4, output.getPath());
+        assertTrue(getPageCount(output) > 1);
+    }
+
+    @Test
+    public void placeholdersShouldBeResolvedAgainstAMap() throws Throwable {
+        final Map<String, Object> customer = new HashMap<>();
+        customer.put("name", "maarten vandeperre");
+        final List<Map<String, Object>> orders = new ArrayList<>();
+        for(int i = 0; i < 3; i++){
+            final Map<String, Object> order = new HashMap<>();
+            order.put("product", "product " + i);
+            order.put("amount", i * 10);
+            orders.add(order);
+        }
+        customer.put("orders", orders);
+        final Map<String, Object> data = new HashMap<>();
+        data.put("customer", customer);
+
+        final DocumentLayout layout = new StringPdfBuilder().layout(CompiledTemplate.compile(getDataTemplate()), data, PageSize.A4);
+
+        assertEquals(Arrays.asList(
+                "Orders of maarten vandeperre (unknown: )",
+                "product", "amount",
+                "product 0", "0", "product 1", "10", "product 2", "20"), getTexts(layout));
+        //the header row and the repeated rows are laid out as one table
+        assertEquals(1, countPathBoxes(layout));
+    }
+
+    @Test
+    public void placeholdersShouldBeResolvedAgainstABean() throws Throwable {
+        final Customer customer = new Customer("VIAE", new Order("product 0", 5), new Order("product 1", 15));
+
+        final DocumentLayout layout = new StringPdfBuilder().layout(CompiledTemplate.compile(getDataTemplate()), Collections.singletonMap("customer", customer), PageSize.A4);
+
+        assertEquals(Arrays.asList(
+                "Orders of VIAE (unknown: )",
+                "product", "amount",
+                "product 0", "5", "product 1", "15"), getTexts(layout));
+    }
+
+    @Test
+    public void templateWithoutDataShouldBeRenderedAsWritten() throws Throwable {
+        final DocumentLayout layout = new StringPdfBuilder().layout(CompiledTemplate.compile(getDataTemplate()), PageSize.A4);
+
+        assertEquals(Arrays.asList(
+                "Orders of ${customer.name} (unknown: ${customer.unknown})",
+                "product", "amount",
+                "${order.product}", "${order.amount}"), getTexts(layout));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownBeanPropertyShouldFail() throws Throwable {
+        new StringPdfBuilder().layout(CompiledTemplate.compile("text|${customer.address}|EOL|\n"), Collections.singletonMap("customer", new Customer("VIAE")), PageSize.A4);
+    }
+
+    private static String getDataTemplate() {
+        final StringJoiner joiner = new StringJoiner("\n");
+        joiner.add("conf|font_family|HELVETICA|EOL|");
+        joiner.add("text|Orders of ${customer.name} (unknown: ${customer.unknown})|EOL|");
+        joiner.add("table_row|product|amount|EOL|");
+        joiner.add("repeat|customer.orders|order|EOL|");
+        joiner.add("table_row|${order.product}|${order.amount}|EOL|");
+        joiner.add("end_repeat|EOL|");
+        joiner.add("");
+        return joiner.toString();
+    }
+
+    private static List<String> getTexts(final DocumentLayout layout) {
+        final List<String> texts = new ArrayList<>();
+        for(final PageLayout page : layout.getPages()){
+            for(final LayoutBox box : page.getBoxes()){
+                if(box instanceof LayoutBox.TextBox){
+                    texts.add(((LayoutBox.TextBox) box).getText().trim());
+                }
+            }
+        }
+        return texts;
+    }
+
+    private static int countPathBoxes(final DocumentLayout layout) {
+        int count = 0;
+        for(final PageLayout page : layout.getPages()){
+            for(final LayoutBox box : page.getBoxes()){
+                count += box instanceof LayoutBox.PathBox ? 1 : 0;
+            }
+        }
+        return count;
+    }
+
+    public static final class Customer {
+        private final String name;
+        private final List<Order> orders;
+
+        private Customer(final String name, final Order... orders) {
+            this.name = name;
+            this.orders = Arrays.asList(orders);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<Order> getOrders() {
+            return orders;
+        }
+
+        //maps return null for unknown keys, beans should have the property
+        public String getUnknown() {
+            return null;
+        }
+    }
+
+    public static final class Order {
+        private final String product;
+        private final int amount;
+
+        private Order(final String product, final int amount) {
+            this.product = product;
+            this.amount = amount;
+        }
+
+        public String getProduct() {
+            return product;
+        }
+
+        public int getAmount() {
+            return amount;
+        }
+    }
+
+    private static String getTemplate() {
+        final StringJoiner joiner = new StringJoiner("\n");
+        joiner.add("conf|font_family|HELVETICA_BOLD|EOL|");
+        joiner.add("conf|font_size|15|EOL|");
+        joiner.add("conf|line_height|-1|EOL|");
+        joiner.add("conf|margin_left|100|EOL|");
+        joiner.add("conf|margin_right|100|EOL|");
+        joiner.add("img|src/test/resources/schoonheidsspecialiste.png|png|25|EOL|");
+        joiner.add("text|Big header title|EOL|");
+        joiner.add("conf|font_family|COURIER|EOL|");
+        joiner.add("conf|font_size|5|EOL|");
+        joiner.add("conf|cell_margin_left|10|EOL|");
+        joiner.add("table_row|name|maarten vandeperre|EOL|");
+        joiner.add("table_row|company|VIAE|EOL|");
+        joiner.add("");
+        return joiner.toString();
+    }
+
+    private static final class CloseTrackingOutputStream extends ByteArrayOutputStream {
+        private boolean closed;
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+
+    private static int getPageCount(final File pdf) throws IOException {
+        try(final PDDocument document = PDDocument.load(pdf)){
+            return document.getNumberOfPages();
+        }
+    }
+
+    /**
+     * Reader generating a template of text lines on the fly, the template itself is never in memory.
+     */
+    private static final class GeneratedTemplateReader extends Reader {
+        private static final String HEADER = "conf|font_family|HELVETICA|EOL|\nconf|font_size|10|EOL|\n";
+        private static final String LINE = "text|" + DefaultString.LOREM_IPSUM + "|EOL|\n";
+        private String current = HEADER;
+        private int remainingLines;
+        private int position;
+
+        private GeneratedTemplateReader(final int lines) {
+            remainingLines = lines;
+        }
+
+        @Override
+        public int read(final char[] buffer, final int offset, final int length) {
+            if(remainingLines == 0){
+                return -1;
+            }
+            final int count = Math.min(length, current.length() - position);
+            current.getChars(position, position + count, buffer, offset);
+            position += count;
+            if(position == current.length()){
+                if(current == LINE){
+                    remainingLines--;
+                }
+                current = LINE;
+                position = 0;
+            }
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.viae.common.pdf.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class TemplateCacheTest {
+
+    private static final String TEMPLATE = "conf|font_family|COURIER|EOL|\ntext|title|EOL|\n";
+
+    @Test
+    public void getOrCompileShouldCompileOnce() {
+        final TemplateCache cache = new TemplateCache(2);
+        final CompiledTemplate template = cache.getOrCompile("invoice", TEMPLATE);
+        assertSame(template, cache.getOrCompile("invoice", TEMPLATE));
+        assertSame(template, cache.get("invoice"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void compileShouldReplaceTheCachedTemplate() throws Throwable {
+        final TemplateCache cache = new TemplateCache(2);
+        final CompiledTemplate first = cache.getOrCompile("invoice", TEMPLATE);
+        final CompiledTemplate second = cache.compile("invoice", new StringReader(TEMPLATE));
+        assertNotNull(second);
+        assertSame(second, cache.get("invoice"));
+        assertEquals(2, first.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedTemplateShouldBeEvicted() {
+        final TemplateCache cache = new TemplateCache(2);
+        cache.getOrCompile("first", TEMPLATE);
+        cache.getOrCompile("second", TEMPLATE);
+        cache.get("first");
+        cache.getOrCompile("third", TEMPLATE);
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("first"));
+        assertNull(cache.get("second"));
+        assertNotNull(cache.get("third"));
+    }
+
+    @Test
+    public void invalidateShouldRemoveTheTemplate() {
+        final TemplateCache cache = new TemplateCache(2);
+        cache.getOrCompile("invoice", TEMPLATE);
+        cache.invalidate("invoice");
+        assertNull(cache.get("invoice"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxSizeShouldBePositive() {
+        new TemplateCache(0);
+    }
+}
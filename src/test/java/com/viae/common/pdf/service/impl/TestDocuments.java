@@ -0,0 +1,69 @@
+package com.viae.common.pdf.service.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import org.apache.pdfbox.io.RandomAccessBuffer;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import com.viae.common.pdf.model.FontFamily;
+import com.viae.common.pdf.model.PdfContext;
+import com.viae.common.pdf.service.impl.PdfBuilder.ImageType;
+
+/**
+ * Shared fixture of the tests that lay out, paint and load whole documents.
+ *
+ * @author Vandeperre Maarten
+ */
+public final class TestDocuments {
+    public static final File IMAGE = new File("src/test/resources/schoonheidsspecialiste.png");
+
+    private TestDocuments() {
+    }
+
+    /**
+     * @param paragraphs, the number of paragraphs to write.
+     * @return a client that writes the given number of paragraphs, with an image and a table every 100 paragraphs.
+     */
+    public static JavaPdfBuilder.BuilderClient paragraphs(final int paragraphs) {
+        return new JavaPdfBuilder.BuilderClient() {
+            @Override
+            public void whenBuilding(final JavaPdfBuilder builder) {
+                builder.setContext(PdfContext.builder()
+                        .create()
+                        .fontFamily(FontFamily.HELVETICA)
+                        .fontSize(10)
+                        .build());
+                for(int i = 0; i < paragraphs; i++){
+                    builder.writeText("paragraph " + i + " " + DefaultString.LOREM_IPSUM);
+                    if(i % 100 == 0){
+                        builder.writeImage(IMAGE, ImageType.OTHER, 100);
+                        builder.writeTable(new String[][]{{"row", String.valueOf(i)}, {"name", "maarten vandeperre"}});
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * @param builder, the builder that paints the layout.
+     * @param layout, the layout to paint.
+     * @return the painted pdf.
+     */
+    public static byte[] paint(final PdfBuilder builder, final DocumentLayout layout) {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        builder.buildPdf(layout, PdfOutput.toStream(stream));
+        return stream.toByteArray();
+    }
+
+    /**
+     * Loads the pdf with its cross reference table, so wrong object offsets fail the test.
+     *
+     * @param pdf, the pdf to load.
+     * @return the loaded document, to be closed by the caller.
+     */
+    public static PDDocument load(final byte[] pdf) throws Exception {
+        return PDDocument.loadNonSeq(new ByteArrayInputStream(pdf), new RandomAccessBuffer());
+    }
+}
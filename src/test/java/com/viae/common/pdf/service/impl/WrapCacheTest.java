@@ -0,0 +1,103 @@
+package com.viae.common.pdf.service.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.viae.common.pdf.model.FontFamily;
+import com.viae.common.pdf.model.PdfContext;
+import com.viae.common.pdf.service.impl.PdfBuilder.PageSize;
+import com.viae.common.pdf.util.TextWrapUtil;
+
+public class WrapCacheTest {
+    private static final String TEXT = "status: waiting for payment";
+
+    @Test
+    public void repeatedTextShouldBeWrappedOnce() {
+        final WrapCache cache = new WrapCache(10);
+        final int[] lineEnds = cache.getLineEnds(TEXT, FontFamily.HELVETICA, 10, 50);
+
+        assertArrayEquals(TextWrapUtil.getLineEnds(TEXT, FontFamily.HELVETICA, 10, 50), lineEnds);
+        assertSame(lineEnds, cache.getLineEnds(TEXT, FontFamily.HELVETICA, 10, 50));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void textShouldBeCachedPerFontFamilySizeAndWidth() {
+        final WrapCache cache = new WrapCache(10);
+        cache.getLineEnds(TEXT, FontFamily.HELVETICA, 10, 50);
+        cache.getLineEnds(TEXT, FontFamily.COURIER, 10, 50);
+        cache.getLineEnds(TEXT, FontFamily.HELVETICA, 12, 50);
+        cache.getLineEnds(TEXT, FontFamily.HELVETICA, 10, 80);
+
+        assertEquals(4, cache.size());
+        assertEquals(4, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedTextShouldBeEvicted() {
+        final WrapCache cache = new WrapCache(2);
+        cache.getLineEnds("first", FontFamily.HELVETICA, 10, 50);
+        cache.getLineEnds("second", FontFamily.HELVETICA, 10, 50);
+        cache.getLineEnds("first", FontFamily.HELVETICA, 10, 50);
+        cache.getLineEnds("third", FontFamily.HELVETICA, 10, 50);
+        cache.getLineEnds("first", FontFamily.HELVETICA, 10, 50);
+        cache.getLineEnds("second", FontFamily.HELVETICA, 10, 50);
+
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    public void longTextShouldNotBeCached() {
+        final WrapCache cache = new WrapCache(10);
+        assertTrue(DefaultString.LOREM_IPSUM.length() > WrapCache.MAX_TEXT_LENGTH);
+        cache.getLineEnds(DefaultString.LOREM_IPSUM, FontFamily.HELVETICA, 10, 50);
+        cache.getLineEnds("", FontFamily.HELVETICA, 10, 50);
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void repeatedCellsShouldBeServedFromTheCache() {
+        final WrapCache cache = new WrapCache(100);
+        final String[][] rows = new String[200][];
+        for(int i = 0; i < rows.length; i++){
+            rows[i] = new String[]{"order " + i, i % 2 == 0 ? "paid" : "waiting for payment", "Belgium"};
+        }
+        final JavaPdfBuilder builder = new JavaPdfBuilder();
+        builder.setWrapCache(cache);
+        final DocumentLayout cached = builder.layout(new TableClient(rows), PageSize.A4);
+        final DocumentLayout uncached = new JavaPdfBuilder().layout(new TableClient(rows), PageSize.A4);
+
+        //the order numbers are unique, the 2 statuses and the country are measured once
+        assertEquals(rows.length + 3, cache.getMissCount());
+        assertEquals(rows.length * 2 - 3, cache.getHitCount());
+        assertEquals(uncached.getPageCount(), cached.getPageCount());
+    }
+
+    private static final class TableClient implements JavaPdfBuilder.BuilderClient {
+        private final String[][] rows;
+
+        private TableClient(final String[][] rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public void whenBuilding(final JavaPdfBuilder builder) {
+            builder.setContext(PdfContext.builder()
+                    .create()
+                    .fontFamily(FontFamily.HELVETICA)
+                    .fontSize(10)
+                    .build());
+            builder.writeTable(rows);
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package com.viae.common.pdf.util;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Collection;
 import java.util.Collections;
@@ -11,6 +13,8 @@ import java.util.List;
 import org.junit.Test;
 
 import com.viae.common.pdf.model.FontFamily;
+import com.viae.common.pdf.model.GlyphWidthTable;
+import com.viae.common.pdf.util.TextWrapUtil.LineBreaks;
 import com.viae.common.pdf.util.TextWrapUtil.WrapResult;
 
 public class TextWrapUtilTest {
@@ -49,6 +53,104 @@ public class TextWrapUtilTest {
         assertEquals("test", result.getWrapResult().get(0));
     }
 
+    @Test
+    public void testWrapTextShouldMeasureRealGlyphWidths(){
+        final String narrowText = "iiiiiiii iiiiiiii";
+        final float maxLineWidth = FontFamily.HELVETICA.getGlyphWidthTable().getWidth(narrowText, 0, narrowText.length()) * GlyphWidthTable.getScale(10);
+        final WrapResult<List<String>> narrowResult = TextWrapUtil.wrapText(narrowText, FontFamily.HELVETICA, 10, maxLineWidth);
+        final WrapResult<List<String>> wideResult = TextWrapUtil.wrapText("WWW WWW", FontFamily.HELVETICA, 10, maxLineWidth);
+        assertEquals(1, narrowResult.getMaxNumberOfLines());
+        assertEquals(2, wideResult.getMaxNumberOfLines());
+        assertEquals("WWW ", wideResult.getWrapResult().get(0));
+        assertEquals("WWW", wideResult.getWrapResult().get(1));
+    }
+
+    @Test
+    public void testLineEndsForNullAndEmptyString(){
+        assertEquals(0, TextWrapUtil.getLineEnds(null, FontFamily.COURIER, 1, 1).length);
+        assertEquals(0, TextWrapUtil.getLineEnds("", FontFamily.COURIER, 1, 1).length);
+    }
+
+    @Test
+    public void testLineEndsShouldPointIntoTheOriginalText(){
+        //courier at font size 10 is 6 units wide per character: 5 characters per line
+        final int[] lineEnds = TextWrapUtil.getLineEnds("aaa bb cccc d", FontFamily.COURIER, 10, 30);
+        assertArrayEquals(new int[]{4, 7, 12, 13}, lineEnds);
+    }
+
+    @Test
+    public void testLineEndsShouldKeepLongWordsOnTheirOwnLine(){
+        final int[] lineEnds = TextWrapUtil.getLineEnds("aa bbbbbbbbbb cc dd", FontFamily.COURIER, 10, 30);
+        assertArrayEquals(new int[]{3, 14, 19}, lineEnds);
+    }
+
+    @Test
+    public void testLineEndsShouldNotBreakOnLeadingSpaces(){
+        final int[] lineEnds = TextWrapUtil.getLineEnds("   bbbbbbbbbb cc", FontFamily.COURIER, 10, 30);
+        assertArrayEquals(new int[]{14, 16}, lineEnds);
+    }
+
+    @Test
+    public void testLineBreaksShouldKeepAllCellsInOneArray(){
+        final LineBreaks lineBreaks = new LineBreaks();
+        TextWrapUtil.wrapCell("aaa bb cccc d", FontFamily.COURIER, 10, 30, lineBreaks);
+        TextWrapUtil.wrapCell(null, FontFamily.COURIER, 10, 30, lineBreaks);
+        lineBreaks.addCell(new int[]{3, 14, 19});
+        TextWrapUtil.wrapCell("aa", FontFamily.COURIER, 10, 30, lineBreaks);
+
+        assertEquals(4, lineBreaks.getCellCount());
+        assertEquals(4, lineBreaks.getMaxNumberOfLines());
+        assertArrayEquals(new int[]{4, 7, 12, 13}, lineBreaks.getLineEnds(0));
+        assertEquals(0, lineBreaks.getLineCount(1));
+        assertEquals(3, lineBreaks.getLineCount(2));
+        assertEquals(3, lineBreaks.getLineStart(2, 1));
+        assertEquals(14, lineBreaks.getLineEnd(2, 1));
+        assertEquals(0, lineBreaks.getLineStart(3, 0));
+        assertEquals(2, lineBreaks.getLineEnd(3, 0));
+    }
+
+    @Test
+    public void testLineBreaksShouldBeReusableAfterClear(){
+        final LineBreaks lineBreaks = new LineBreaks();
+        for(int i = 0; i < 100; i++){
+            TextWrapUtil.wrapCell(DUMMY_TEXT_LONG, FontFamily.HELVETICA, 10, 100, lineBreaks);
+        }
+        lineBreaks.clear();
+        TextWrapUtil.wrapCell("aa bbbbbbbbbb cc dd", FontFamily.COURIER, 10, 30, lineBreaks);
+
+        assertEquals(1, lineBreaks.getCellCount());
+        assertEquals(3, lineBreaks.getMaxNumberOfLines());
+        assertArrayEquals(TextWrapUtil.getLineEnds("aa bbbbbbbbbb cc dd", FontFamily.COURIER, 10, 30), lineBreaks.getLineEnds(0));
+    }
+
+    @Test
+    public void testLineEndsShouldEqualTheWrappedCell(){
+        final String[] texts = {DUMMY_TEXT_SHORT, DUMMY_TEXT_LONG, "  leading spaces  and   more spaces  ", "aaaaaaaaaaaaaaaaaaaa b", "x"};
+        final LineBreaks lineBreaks = new LineBreaks();
+        for(final String text : texts){
+            for(int width = 10; width < 400; width += 35){
+                lineBreaks.clear();
+                TextWrapUtil.wrapCell(text, FontFamily.HELVETICA, 10, width, lineBreaks);
+                assertArrayEquals(lineBreaks.getLineEnds(0), TextWrapUtil.getLineEnds(text, FontFamily.HELVETICA, 10, width));
+            }
+        }
+    }
+
+    @Test
+    public void testWrapTextForMultiMegabyteString(){
+        final StringBuilder builder = new StringBuilder();
+        while(builder.length() < 4 * 1024 * 1024){
+            builder.append(DUMMY_TEXT_LONG).append(' ');
+        }
+        final String text = builder.toString();
+        final int[] lineEnds = TextWrapUtil.getLineEnds(text, FontFamily.HELVETICA, 5, 207.43782f);
+        assertEquals(text.length(), lineEnds[lineEnds.length - 1]);
+        for(int i = 1; i < lineEnds.length; i++){
+            assertTrue(lineEnds[i] > lineEnds[i - 1]);
+            assertEquals(' ', text.charAt(lineEnds[i - 1] - 1));
+        }
+    }
+
     @Test
     public void testWrapTextForNullArray(){
         final String[] textArray = null;
@@ -68,14 +170,13 @@ public class TextWrapUtilTest {
         final TextWrapUtil.WrapResult<List<String>> wrapResult = TextWrapUtil.wrapText(DUMMY_TEXT_LONG, fontFamily, fontSize, maxLineWidth);
         final List<String> result = wrapResult.getWrapResult();
         //THEN
-        assertEquals(5, wrapResult.getMaxNumberOfLines());
-        assertEquals(5, result.size());
+        assertEquals(4, wrapResult.getMaxNumberOfLines());
+        assertEquals(4, result.size());
         final Iterator<String> it = result.iterator();
-        assertEquals("Zolder vormt zondag het decor voor de strijd om de ", it.next());
-        assertEquals("regenboogtrui in het veld. Volgt Mathieu van der Poel ", it.next());
-        assertEquals("zichzelf op? Troeft Wout van Aert de Nederlandse ", it.next());
-        assertEquals("titelverdediger af? Of is er een derde hond? Breng ", it.next());
-        assertEquals("hier uw stem uit.", it.next());
+        assertEquals("Zolder vormt zondag het decor voor de strijd om de regenboogtrui in ", it.next());
+        assertEquals("het veld. Volgt Mathieu van der Poel zichzelf op? Troeft Wout van ", it.next());
+        assertEquals("Aert de Nederlandse titelverdediger af? Of is er een derde hond? ", it.next());
+        assertEquals("Breng hier uw stem uit.", it.next());
     }
     @Test
     public void testWrapTextForStringArray() {
@@ -88,7 +189,7 @@ public class TextWrapUtilTest {
         final TextWrapUtil.WrapResult<List<List<String>>> wrapResult = TextWrapUtil.wrapText(input, fontFamily, fontSize, maxLineWidth);
         final List<List<String>> result = wrapResult.getWrapResult();
         //THEN
-        assertEquals(5, wrapResult.getMaxNumberOfLines());
+        assertEquals(4, wrapResult.getMaxNumberOfLines());
         assertEquals(5, result.size());
         final Iterator<List<String>> listIt = result.iterator();
 
@@ -101,13 +202,12 @@ public class TextWrapUtilTest {
         assertEquals("Maarten Vandeperre", secondResult.iterator().next());
 
         final Collection<String> thirdResult = listIt.next();
-        assertEquals(5, thirdResult.size());
+        assertEquals(4, thirdResult.size());
         final Iterator<String> thirdResultIt = thirdResult.iterator();
-        assertEquals("Zolder vormt zondag het decor voor de strijd om de ", thirdResultIt.next());
-        assertEquals("regenboogtrui in het veld. Volgt Mathieu van der Poel ", thirdResultIt.next());
-        assertEquals("zichzelf op? Troeft Wout van Aert de Nederlandse ", thirdResultIt.next());
-        assertEquals("titelverdediger af? Of is er een derde hond? Breng ", thirdResultIt.next());
-        assertEquals("hier uw stem uit.", thirdResultIt.next());;
+        assertEquals("Zolder vormt zondag het decor voor de strijd om de regenboogtrui in ", thirdResultIt.next());
+        assertEquals("het veld. Volgt Mathieu van der Poel zichzelf op? Troeft Wout van ", thirdResultIt.next());
+        assertEquals("Aert de Nederlandse titelverdediger af? Of is er een derde hond? ", thirdResultIt.next());
+        assertEquals("Breng hier uw stem uit.", thirdResultIt.next());
 
         final Collection<String> fourthResult = listIt.next();
         assertEquals(1, fourthResult.size());